@@ -0,0 +1,214 @@
+package de.matrixweb.smaller.dev.server;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import org.apache.http.Header;
+import org.apache.http.HttpEntityEnclosingRequest;
+import org.apache.http.HttpHost;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpVersion;
+import org.apache.http.StatusLine;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.ContentType;
+import org.apache.http.message.BasicHeader;
+import org.apache.http.message.BasicStatusLine;
+import org.apache.http.protocol.HTTP;
+import org.apache.http.util.EntityUtils;
+import org.eclipse.jetty.client.Address;
+import org.eclipse.jetty.client.HttpExchange;
+import org.eclipse.jetty.http.HttpSchemes;
+import org.eclipse.jetty.io.Buffer;
+import org.eclipse.jetty.io.ByteArrayBuffer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Non-blocking counterpart of {@link HttpClient}. Requests are sent through
+ * the jetty select-channel client, so no thread is held while waiting for the
+ * backend.
+ *
+ * @author markusw
+ */
+public class AsyncHttpClient {
+
+  private static final Logger LOGGER = LoggerFactory
+      .getLogger(AsyncHttpClient.class);
+
+  private final Pattern rewritePattern;
+
+  private final HttpHost targetHost;
+
+  private final int localport;
+
+  private final org.eclipse.jetty.client.HttpClient client;
+
+  /**
+   * @param targetHost
+   * @param localport
+   * @throws IOException
+   */
+  public AsyncHttpClient(final HttpHost targetHost, final int localport)
+      throws IOException {
+    this.targetHost = targetHost;
+    this.localport = localport;
+    this.rewritePattern = HttpClient.createRewritePattern(targetHost);
+
+    this.client = new org.eclipse.jetty.client.HttpClient();
+    this.client
+        .setConnectorType(org.eclipse.jetty.client.HttpClient.CONNECTOR_SELECT_CHANNEL);
+    this.client.setMaxConnectionsPerAddress(256);
+    try {
+      this.client.start();
+    } catch (final Exception e) {
+      throw new IOException("Failed to start async http client", e);
+    }
+  }
+
+  /**
+   * Sends the given request to the target host. The call returns immediately
+   * and the response (or failure) is reported to the given handler from one
+   * of the clients threads.
+   *
+   * @param request
+   * @param responseHandler
+   * @throws IOException
+   */
+  public void request(final HttpRequest request,
+      final ResponseHandler responseHandler) throws IOException {
+    final ProxyExchange exchange = new ProxyExchange(responseHandler);
+    exchange.setAddress(new Address(this.targetHost.getHostName(),
+        this.targetHost.getPort()));
+    exchange.setScheme(HttpSchemes.HTTP);
+    exchange.setMethod(request.getRequestLine().getMethod());
+    exchange.setRequestURI(request.getRequestLine().getUri());
+    // Skip port in header if default
+    if (this.targetHost.getPort() == 80) {
+      exchange.setRequestHeader(HTTP.TARGET_HOST,
+          this.targetHost.getHostName());
+    } else {
+      exchange.setRequestHeader(HTTP.TARGET_HOST,
+          this.targetHost.toHostString());
+    }
+    for (final Header header : request.getAllHeaders()) {
+      exchange.addRequestHeader(header.getName(), header.getValue());
+    }
+    if (request instanceof HttpEntityEnclosingRequest) {
+      final HttpEntityEnclosingRequest entityRequest = (HttpEntityEnclosingRequest) request;
+      if (entityRequest.getEntity() != null) {
+        exchange.setRequestContent(new ByteArrayBuffer(EntityUtils
+            .toByteArray(entityRequest.getEntity())));
+      }
+    }
+    this.client.send(exchange);
+  }
+
+  /**
+   *
+   */
+  public void dispose() {
+    try {
+      this.client.stop();
+    } catch (final Exception e) {
+      LOGGER.error("Failed to stop async http client", e);
+    }
+  }
+
+  private class ProxyExchange extends HttpExchange {
+
+    private final ResponseHandler responseHandler;
+
+    private final List<Header> headers = new ArrayList<>();
+
+    private final ByteArrayOutputStream content = new ByteArrayOutputStream();
+
+    private StatusLine statusLine;
+
+    private String contentType;
+
+    ProxyExchange(final ResponseHandler responseHandler) {
+      this.responseHandler = responseHandler;
+    }
+
+    @Override
+    protected void onResponseStatus(final Buffer version, final int status,
+        final Buffer reason) throws IOException {
+      this.statusLine = new BasicStatusLine(HttpVersion.HTTP_1_1, status,
+          reason != null ? reason.toString() : null);
+    }
+
+    @Override
+    protected void onResponseHeader(final Buffer name, final Buffer value)
+        throws IOException {
+      String headerValue = value.toString();
+      if ("Location".equalsIgnoreCase(name.toString())) {
+        headerValue = HttpClient.rewriteLocation(
+            AsyncHttpClient.this.rewritePattern,
+            AsyncHttpClient.this.localport, headerValue);
+      } else if (HTTP.CONTENT_TYPE.equalsIgnoreCase(name.toString())) {
+        this.contentType = headerValue;
+      }
+      this.headers.add(new BasicHeader(name.toString(), headerValue));
+    }
+
+    @Override
+    protected void onResponseContent(final Buffer content) throws IOException {
+      content.writeTo(this.content);
+    }
+
+    @Override
+    protected void onResponseComplete() throws IOException {
+      try {
+        ContentType ct = null;
+        Charset charset = HTTP.DEF_CONTENT_CHARSET;
+        if (this.contentType != null) {
+          ct = ContentType.parse(this.contentType);
+          if (ct.getCharset() != null) {
+            charset = ct.getCharset();
+          }
+        }
+        final ByteArrayEntity entity = new ByteArrayEntity(
+            this.content.toByteArray(), ct);
+        this.responseHandler.handle(this.statusLine,
+            this.headers.toArray(new Header[this.headers.size()]), entity, ct,
+            charset);
+      } catch (final IOException | RuntimeException e) {
+        this.responseHandler.failed(e);
+      }
+    }
+
+    @Override
+    protected void onConnectionFailed(final Throwable x) {
+      this.responseHandler.failed(x);
+    }
+
+    @Override
+    protected void onException(final Throwable x) {
+      this.responseHandler.failed(x);
+    }
+
+    @Override
+    protected void onExpire() {
+      this.responseHandler.failed(new IOException("Proxy request expired"));
+    }
+
+  }
+
+  /**
+   *
+   */
+  public static interface ResponseHandler extends HttpClient.ResponseHandler {
+
+    /**
+     * @param cause
+     *          The reason the request could not be completed
+     */
+    void failed(Throwable cause);
+
+  }
+
+}
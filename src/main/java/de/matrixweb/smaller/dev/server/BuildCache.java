@@ -0,0 +1,139 @@
+package de.matrixweb.smaller.dev.server;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.FileUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+
+import de.matrixweb.smaller.common.ProcessDescription;
+import de.matrixweb.smaller.common.Version;
+
+/**
+ * Persistent cache of build outputs. Entries are keyed by the smaller
+ * version, the process description (including the processor options) and the
+ * content hashes of its inputs, so an entry is valid as long as it exists.
+ *
+ * @author markusw
+ */
+public class BuildCache {
+
+  private static final Logger LOGGER = LoggerFactory
+      .getLogger(BuildCache.class);
+
+  private static final long MAX_AGE = TimeUnit.DAYS.toMillis(14);
+
+  private final File directory;
+
+  /**
+   * @param directory
+   */
+  public BuildCache(final File directory) {
+    this.directory = directory;
+    if (!directory.isDirectory() && !directory.mkdirs()) {
+      LOGGER.warn("Unable to create build cache at {}", directory);
+    }
+    removeExpiredEntries();
+  }
+
+  /**
+   * @return Returns the default cache folder in the users home
+   */
+  public static File getDefaultDirectory() {
+    return new File(System.getProperty("user.home"),
+        ".smaller-dev-server/cache");
+  }
+
+  private void removeExpiredEntries() {
+    final File[] entries = this.directory.listFiles();
+    if (entries != null) {
+      final long expired = System.currentTimeMillis() - MAX_AGE;
+      for (final File entry : entries) {
+        if (entry.lastModified() < expired && !entry.delete()) {
+          LOGGER.debug("Unable to remove expired cache entry {}", entry);
+        }
+      }
+    }
+  }
+
+  /**
+   * @param processDescription
+   * @param inputs
+   *          The content hashes of all inputs of the process description
+   * @return Returns the cache key or <code>null</code> if the process
+   *         description could not be serialized
+   */
+  public String createKey(final ProcessDescription processDescription,
+      final Map<String, HashCode> inputs) {
+    final Hasher hasher = Hashing.murmur3_128().newHasher();
+    hasher.putString(String.valueOf(Version.getCurrentVersion()));
+    try {
+      hasher.putBytes(new ObjectMapper().writeValueAsBytes(processDescription));
+    } catch (final IOException e) {
+      LOGGER.warn("Unable to create cache key for {}: {}",
+          processDescription.getOutputFile(), e.getMessage());
+      return null;
+    }
+    for (final Entry<String, HashCode> entry : new TreeMap<>(inputs)
+        .entrySet()) {
+      hasher.putString(entry.getKey());
+      hasher.putBytes(entry.getValue().asBytes());
+    }
+    return hasher.hash().toString();
+  }
+
+  /**
+   * @param key
+   * @return Returns the cached content or <code>null</code> if there is none
+   */
+  public byte[] load(final String key) {
+    final File entry = new File(this.directory, key);
+    if (entry.isFile()) {
+      try {
+        final byte[] content = FileUtils.readFileToByteArray(entry);
+        // Keep used entries from expiring
+        entry.setLastModified(System.currentTimeMillis());
+        return content;
+      } catch (final IOException e) {
+        LOGGER.warn("Unable to read cache entry {}: {}", entry, e.getMessage());
+      }
+    }
+    return null;
+  }
+
+  /**
+   * @param key
+   * @param content
+   */
+  public void store(final String key, final byte[] content) {
+    final File entry = new File(this.directory, key);
+    Path temp = null;
+    try {
+      // Each writer has its own temp file, concurrent readers (e.g. another
+      // server instance) never see partial entries
+      temp = Files.createTempFile(this.directory.toPath(), key, ".tmp");
+      Files.write(temp, content);
+      Files.move(temp, entry.toPath(), StandardCopyOption.ATOMIC_MOVE,
+          StandardCopyOption.REPLACE_EXISTING);
+    } catch (final IOException e) {
+      LOGGER.warn("Unable to write cache entry {}: {}", entry, e.getMessage());
+      if (temp != null) {
+        FileUtils.deleteQuietly(temp.toFile());
+      }
+    }
+  }
+
+}
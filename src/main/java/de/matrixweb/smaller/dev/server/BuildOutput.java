@@ -0,0 +1,100 @@
+package de.matrixweb.smaller.dev.server;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Immutable result of a smaller build as it is served to clients. The content
+ * is kept as it was produced by the pipeline together with its gzip encoding
+ * and validators, so requests are served without any further processing.
+ *
+ * @author markusw
+ */
+public class BuildOutput {
+
+  private final byte[] content;
+
+  private final byte[] gzipped;
+
+  private final String etag;
+
+  private final String gzipETag;
+
+  private final long lastModified;
+
+  private final long version;
+
+  /**
+   * @param content
+   * @param lastModified
+   * @param version
+   *          The number of the build which produced the content
+   * @throws IOException
+   */
+  public BuildOutput(final byte[] content, final long lastModified,
+      final long version) throws IOException {
+    this.content = content;
+    this.gzipped = gzip(content);
+    this.etag = ConditionalGet.createETag(content);
+    // Each encoding is a different representation and needs its own tag
+    this.gzipETag = this.etag.substring(0, this.etag.length() - 1) + "-gz\"";
+    this.lastModified = lastModified;
+    this.version = version;
+  }
+
+  private static byte[] gzip(final byte[] content) throws IOException {
+    final ByteArrayOutputStream baos = new ByteArrayOutputStream(
+        content.length / 3 + 64);
+    try (GZIPOutputStream out = new GZIPOutputStream(baos)) {
+      out.write(content);
+    }
+    return baos.toByteArray();
+  }
+
+  /**
+   * @param other
+   * @return Returns true if the given output has the same content as this one
+   */
+  public boolean isSameContent(final BuildOutput other) {
+    return other != null && this.etag.equals(other.etag);
+  }
+
+  /**
+   * @param gzip
+   * @return the content in the requested encoding
+   */
+  public byte[] getContent(final boolean gzip) {
+    return gzip ? this.gzipped : this.content;
+  }
+
+  /**
+   * @param gzip
+   * @return the entity-tag of the requested encoding
+   */
+  public String getETag(final boolean gzip) {
+    return gzip ? this.gzipETag : this.etag;
+  }
+
+  /**
+   * @return the length of the unencoded content
+   */
+  public int getLength() {
+    return this.content.length;
+  }
+
+  /**
+   * @return the lastModified
+   */
+  public long getLastModified() {
+    return this.lastModified;
+  }
+
+  /**
+   * @return the number of the build which produced the content
+   */
+  public long getVersion() {
+    return this.version;
+  }
+
+}
@@ -0,0 +1,185 @@
+package de.matrixweb.smaller.dev.server;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * The build bookkeeping of a resource handler. Builds are numbered; changes
+ * are announced as soon as they are detected, so requests could wait for the
+ * build including them. A running build is cancelled by new changes and the
+ * pending changes are merged into the next build.
+ *
+ * @author markusw
+ */
+public class BuildState {
+
+  private long requestedBuild = 0;
+
+  private long completedBuild = 0;
+
+  private long runningBuild = 0;
+
+  private boolean buildScheduled = false;
+
+  private boolean buildPending = false;
+
+  private boolean pendingFullBuild = false;
+
+  private final Set<String> pendingResources = new LinkedHashSet<>();
+
+  private volatile boolean buildCancelled = false;
+
+  /**
+   * Announces changes which are not yet processed.
+   */
+  public synchronized void announce() {
+    // A running build could not include the announced changes
+    if (this.requestedBuild == this.completedBuild
+        || this.requestedBuild == this.runningBuild) {
+      this.requestedBuild++;
+    }
+  }
+
+  /**
+   * Withdraws an announcement whose changes turned out to be irrelevant
+   * (e.g. touched files). A running build is not affected.
+   */
+  public synchronized void withdraw() {
+    if (!this.buildPending && this.requestedBuild != this.completedBuild
+        && this.requestedBuild != this.runningBuild) {
+      this.requestedBuild--;
+      notifyAll();
+    }
+  }
+
+  /**
+   * Requests a build for the given changes and cancels the running one.
+   *
+   * @param changedResources
+   *          The changed resources or <code>null</code> for a full build
+   * @return Returns true if the caller has to start a runner executing the
+   *         builds, false if one is already scheduled
+   */
+  public synchronized boolean request(final List<String> changedResources) {
+    announce();
+    if (changedResources == null) {
+      this.pendingFullBuild = true;
+    } else {
+      this.pendingResources.addAll(changedResources);
+    }
+    this.buildPending = true;
+    if (this.runningBuild != 0) {
+      this.buildCancelled = true;
+    }
+    if (this.buildScheduled) {
+      return false;
+    }
+    this.buildScheduled = true;
+    return true;
+  }
+
+  /**
+   * Takes the pending changes and starts the next build.
+   *
+   * @return Returns the build to execute or <code>null</code> if there are no
+   *         pending changes; the runner has to stop then
+   */
+  public synchronized Build start() {
+    if (!this.buildPending) {
+      this.buildScheduled = false;
+      return null;
+    }
+    final Build build = new Build(this.requestedBuild,
+        this.pendingFullBuild ? null : new ArrayList<>(this.pendingResources));
+    this.pendingResources.clear();
+    this.pendingFullBuild = false;
+    this.buildPending = false;
+    this.buildCancelled = false;
+    this.runningBuild = build.number;
+    return build;
+  }
+
+  /**
+   * @param build
+   * @param completed
+   *          False if the build was cancelled
+   */
+  public synchronized void finish(final Build build, final boolean completed) {
+    this.runningBuild = 0;
+    if (completed) {
+      this.completedBuild = Math.max(this.completedBuild, build.number);
+      notifyAll();
+    }
+  }
+
+  /**
+   * @return Returns true if the running build was cancelled by new changes
+   */
+  public boolean isCancelled() {
+    return this.buildCancelled;
+  }
+
+  /**
+   * @param build
+   * @return Returns true if further changes were announced since the given
+   *         build was started
+   */
+  public synchronized boolean isSuperseded(final Build build) {
+    return this.requestedBuild != build.number;
+  }
+
+  /**
+   * Waits until the build requested at the time of the call is completed or
+   * the timeout elapsed. A timeout of zero waits without limit.
+   *
+   * @param timeout
+   * @return Returns the number of the awaited build if it is not completed,
+   *         otherwise 0
+   * @throws InterruptedException
+   */
+  public synchronized long await(final long timeout)
+      throws InterruptedException {
+    final long deadline = timeout > 0 ? System.currentTimeMillis() + timeout
+        : Long.MAX_VALUE;
+    final long build = this.requestedBuild;
+    while (this.completedBuild < build && this.requestedBuild >= build) {
+      final long remaining = deadline - System.currentTimeMillis();
+      if (remaining <= 0) {
+        return build;
+      }
+      wait(remaining);
+    }
+    return 0;
+  }
+
+  /** */
+  public static class Build {
+
+    private final long number;
+
+    private final List<String> changedResources;
+
+    Build(final long number, final List<String> changedResources) {
+      this.number = number;
+      this.changedResources = changedResources;
+    }
+
+    /**
+     * @return the number
+     */
+    public long getNumber() {
+      return this.number;
+    }
+
+    /**
+     * @return the changed resources or <code>null</code> for a full build
+     */
+    public List<String> getChangedResources() {
+      return this.changedResources;
+    }
+
+  }
+
+}
@@ -0,0 +1,102 @@
+package de.matrixweb.smaller.dev.server;
+
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * The resource paths created, modified and deleted since the last build.
+ * Each path is only kept once; the latest kind of change wins.
+ *
+ * @author markusw
+ */
+public class ChangeSet {
+
+  private final Set<String> created = new LinkedHashSet<>();
+
+  private final Set<String> modified = new LinkedHashSet<>();
+
+  private final Set<String> deleted = new LinkedHashSet<>();
+
+  /**
+   * @param path
+   */
+  public void created(final String path) {
+    this.deleted.remove(path);
+    this.modified.remove(path);
+    this.created.add(path);
+  }
+
+  /**
+   * @param path
+   */
+  public void modified(final String path) {
+    if (!this.created.contains(path)) {
+      this.deleted.remove(path);
+      this.modified.add(path);
+    }
+  }
+
+  /**
+   * @param path
+   */
+  public void deleted(final String path) {
+    this.created.remove(path);
+    this.modified.remove(path);
+    this.deleted.add(path);
+  }
+
+  /**
+   * @param other
+   *          The later changes to merge into this set
+   */
+  public void merge(final ChangeSet other) {
+    for (final String path : other.deleted) {
+      deleted(path);
+    }
+    for (final String path : other.created) {
+      created(path);
+    }
+    for (final String path : other.modified) {
+      modified(path);
+    }
+  }
+
+  /**
+   * @return Returns true if there are no changes
+   */
+  public boolean isEmpty() {
+    return this.created.isEmpty() && this.modified.isEmpty()
+        && this.deleted.isEmpty();
+  }
+
+  /**
+   * @return the created
+   */
+  public Set<String> getCreated() {
+    return this.created;
+  }
+
+  /**
+   * @return the modified
+   */
+  public Set<String> getModified() {
+    return this.modified;
+  }
+
+  /**
+   * @return the deleted
+   */
+  public Set<String> getDeleted() {
+    return this.deleted;
+  }
+
+  /**
+   * @see java.lang.Object#toString()
+   */
+  @Override
+  public String toString() {
+    return "created=" + this.created + ", modified=" + this.modified
+        + ", deleted=" + this.deleted;
+  }
+
+}
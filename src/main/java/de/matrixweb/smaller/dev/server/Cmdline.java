@@ -34,6 +34,36 @@ public class Cmdline {
   @Option(name = "--force-full-reload", usage = "Flag to force always full reload on resource changes; Defaults to true for compatibility")
   private Boolean forceFullReload = true;
 
+  @Option(name = "--stream", usage = "Flag to write responses directly to the client instead of buffering them")
+  private Boolean streaming;
+
+  @Option(name = "--async-proxy", usage = "Flag to proxy requests without blocking a server thread while waiting for the backend")
+  private Boolean asyncProxy;
+
+  @Option(name = "--watch-quiet-period", usage = "Milliseconds without further file changes before a rebuild is started - defaults to 100")
+  private Long watchQuietPeriod;
+
+  @Option(name = "--watch-max-wait", usage = "Maximum milliseconds changes are collected before a rebuild is started - defaults to 1000")
+  private Long watchMaxWait;
+
+  @Option(name = "--incremental-build", usage = "Flag to only rebuild outputs which could be affected by the changed resources")
+  private Boolean incrementalBuild;
+
+  @Option(name = "--wait-for-build", usage = "Milliseconds a request for a smaller-resource waits for a pending build - defaults to 0 (serve the last output immediately)")
+  private Long waitForBuild;
+
+  @Option(name = "--build-cache", usage = "Flag to keep build outputs in ~/.smaller-dev-server/cache to restore them on restart")
+  private Boolean buildCache;
+
+  @Option(name = "--lazy", usage = "Flag to start the server before the resources are indexed and built; requests wait for the build of their environment")
+  private Boolean lazy;
+
+  @Option(name = "--watch-polling", usage = "Flag to detect file changes by polling instead of native file events (e.g. for docker volumes, vagrant shares or NFS)")
+  private Boolean watchPolling;
+
+  @Option(name = "--css-inject", usage = "Flag to send changed stylesheets over the live-reload socket and apply them without reloading them")
+  private Boolean cssInject;
+
   @Argument(usage = "The config file. If not given it defaults to smaller.yml in the current directory")
   private File file;
 
@@ -157,6 +187,36 @@ public class Cmdline {
     this.forceFullReload = forceFullReload;
   }
 
+  /**
+   * @return the streaming
+   */
+  public Boolean getStreaming() {
+    return this.streaming;
+  }
+
+  /**
+   * @param streaming
+   *          the streaming to set
+   */
+  public void setStreaming(final Boolean streaming) {
+    this.streaming = streaming;
+  }
+
+  /**
+   * @return the asyncProxy
+   */
+  public Boolean getAsyncProxy() {
+    return this.asyncProxy;
+  }
+
+  /**
+   * @param asyncProxy
+   *          the asyncProxy to set
+   */
+  public void setAsyncProxy(final Boolean asyncProxy) {
+    this.asyncProxy = asyncProxy;
+  }
+
   /**
    * @return the file
    */
@@ -167,4 +227,124 @@ public class Cmdline {
     return this.file;
   }
 
+  /**
+   * @return the watchQuietPeriod
+   */
+  public Long getWatchQuietPeriod() {
+    return this.watchQuietPeriod;
+  }
+
+  /**
+   * @param watchQuietPeriod
+   *          the watchQuietPeriod to set
+   */
+  public void setWatchQuietPeriod(final Long watchQuietPeriod) {
+    this.watchQuietPeriod = watchQuietPeriod;
+  }
+
+  /**
+   * @return the watchMaxWait
+   */
+  public Long getWatchMaxWait() {
+    return this.watchMaxWait;
+  }
+
+  /**
+   * @param watchMaxWait
+   *          the watchMaxWait to set
+   */
+  public void setWatchMaxWait(final Long watchMaxWait) {
+    this.watchMaxWait = watchMaxWait;
+  }
+
+  /**
+   * @return the incrementalBuild
+   */
+  public Boolean getIncrementalBuild() {
+    return this.incrementalBuild;
+  }
+
+  /**
+   * @param incrementalBuild
+   *          the incrementalBuild to set
+   */
+  public void setIncrementalBuild(final Boolean incrementalBuild) {
+    this.incrementalBuild = incrementalBuild;
+  }
+
+  /**
+   * @return the waitForBuild
+   */
+  public Long getWaitForBuild() {
+    return this.waitForBuild;
+  }
+
+  /**
+   * @param waitForBuild
+   *          the waitForBuild to set
+   */
+  public void setWaitForBuild(final Long waitForBuild) {
+    this.waitForBuild = waitForBuild;
+  }
+
+  /**
+   * @return the buildCache
+   */
+  public Boolean getBuildCache() {
+    return this.buildCache;
+  }
+
+  /**
+   * @param buildCache
+   *          the buildCache to set
+   */
+  public void setBuildCache(final Boolean buildCache) {
+    this.buildCache = buildCache;
+  }
+
+  /**
+   * @return the lazy
+   */
+  public Boolean getLazy() {
+    return this.lazy;
+  }
+
+  /**
+   * @param lazy
+   *          the lazy to set
+   */
+  public void setLazy(final Boolean lazy) {
+    this.lazy = lazy;
+  }
+
+  /**
+   * @return the watchPolling
+   */
+  public Boolean getWatchPolling() {
+    return this.watchPolling;
+  }
+
+  /**
+   * @param watchPolling
+   *          the watchPolling to set
+   */
+  public void setWatchPolling(final Boolean watchPolling) {
+    this.watchPolling = watchPolling;
+  }
+
+  /**
+   * @return the cssInject
+   */
+  public Boolean getCssInject() {
+    return this.cssInject;
+  }
+
+  /**
+   * @param cssInject
+   *          the cssInject to set
+   */
+  public void setCssInject(final Boolean cssInject) {
+    this.cssInject = cssInject;
+  }
+
 }
@@ -0,0 +1,102 @@
+package de.matrixweb.smaller.dev.server;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import com.google.common.hash.Hashing;
+
+/**
+ * Support for validators (<code>ETag</code> and <code>Last-Modified</code>)
+ * and the conditional request headers answered by them.
+ *
+ * @author markusw
+ */
+public class ConditionalGet {
+
+  private ConditionalGet() {
+  }
+
+  /**
+   * @param content
+   * @return Returns a strong entity-tag for the given content
+   */
+  public static String createETag(final byte[] content) {
+    return '"' + Hashing.murmur3_128().hashBytes(content).toString() + '"';
+  }
+
+  /**
+   * @param lastModified
+   * @param length
+   * @return Returns a strong entity-tag for a file with the given
+   *         modification time and size
+   */
+  public static String createETag(final long lastModified, final long length) {
+    return '"' + Long.toHexString(lastModified) + '-' + Long.toHexString(length)
+        + '"';
+  }
+
+  /**
+   * Adds the validators to the response and checks the conditional headers of
+   * the request. If the client copy is still valid the response status is set
+   * to 304 and no content must be written.
+   *
+   * @param request
+   * @param response
+   * @param etag
+   *          The entity-tag of the current content or <code>null</code>
+   * @param lastModified
+   *          The modification time of the current content or a value less
+   *          than or equal to zero if unknown
+   * @return Returns true if the response is answered with 304 (Not
+   *         Modified)
+   */
+  public static boolean isNotModified(final HttpServletRequest request,
+      final HttpServletResponse response, final String etag,
+      final long lastModified) {
+    if (etag != null) {
+      response.setHeader("ETag", etag);
+    }
+    if (lastModified > 0) {
+      response.setDateHeader("Last-Modified", lastModified);
+    }
+    if (request == null
+        || !("GET".equals(request.getMethod()) || "HEAD".equals(request
+            .getMethod()))) {
+      return false;
+    }
+
+    boolean notModified = false;
+    final String ifNoneMatch = request.getHeader("If-None-Match");
+    if (ifNoneMatch != null) {
+      notModified = etag != null && matches(ifNoneMatch, etag);
+    } else if (lastModified > 0) {
+      long ifModifiedSince = -1;
+      try {
+        ifModifiedSince = request.getDateHeader("If-Modified-Since");
+      } catch (final IllegalArgumentException e) {
+        // Ignore invalid dates
+      }
+      // Http dates have only a precision of seconds
+      notModified = ifModifiedSince > 0
+          && lastModified / 1000 <= ifModifiedSince / 1000;
+    }
+    if (notModified) {
+      response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+    }
+    return notModified;
+  }
+
+  private static boolean matches(final String ifNoneMatch, final String etag) {
+    for (String candidate : ifNoneMatch.split(",")) {
+      candidate = candidate.trim();
+      if (candidate.startsWith("W/")) {
+        candidate = candidate.substring(2);
+      }
+      if ("*".equals(candidate) || etag.equals(candidate)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+}
@@ -0,0 +1,103 @@
+package de.matrixweb.smaller.dev.server;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.hash.HashCode;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+import com.google.common.io.Files;
+
+/**
+ * Content hashes of the resources of an environment. Used to detect file
+ * events which did not change the content of a file (e.g. touch or saving
+ * unchanged files).
+ *
+ * @author markusw
+ */
+public class ContentHashes {
+
+  private static final Logger LOGGER = LoggerFactory
+      .getLogger(ContentHashes.class);
+
+  private static final HashFunction HASH_FUNCTION = Hashing.murmur3_128();
+
+  private final DocumentRoots roots;
+
+  private final ConcurrentMap<String, HashCode> hashes = new ConcurrentHashMap<>();
+
+  /**
+   * @param roots
+   * @param resources
+   *          The initial resource paths
+   */
+  public ContentHashes(final DocumentRoots roots,
+      final Collection<String> resources) {
+    this.roots = roots;
+    for (final String path : resources) {
+      final HashCode hash = hash(path);
+      if (hash != null) {
+        this.hashes.put(path, hash);
+      }
+    }
+  }
+
+  private HashCode hash(final String path) {
+    final File file = this.roots.resolve(path);
+    if (file != null) {
+      try {
+        return Files.hash(file, HASH_FUNCTION);
+      } catch (final IOException e) {
+        LOGGER.debug("Unable to read {}: {}", file, e.getMessage());
+      }
+    }
+    return null;
+  }
+
+  /**
+   * @param path
+   * @return Returns the content hash of the given resource or
+   *         <code>null</code> if the resource is unknown
+   */
+  public HashCode get(final String path) {
+    return this.hashes.get(path);
+  }
+
+  /**
+   * @return Returns a copy of all known content hashes
+   */
+  public Map<String, HashCode> snapshot() {
+    return new HashMap<>(this.hashes);
+  }
+
+  /**
+   * Rehashes the given resources.
+   *
+   * @param paths
+   *          The changed resource paths
+   * @return Returns the paths which content was created, changed or deleted
+   */
+  public List<String> update(final Collection<String> paths) {
+    final List<String> changed = new ArrayList<>(paths.size());
+    for (final String path : paths) {
+      final HashCode hash = hash(path);
+      final HashCode previous = hash != null ? this.hashes.put(path, hash)
+          : this.hashes.remove(path);
+      if (hash != null ? !hash.equals(previous) : previous != null) {
+        changed.add(path);
+      }
+    }
+    return changed;
+  }
+
+}
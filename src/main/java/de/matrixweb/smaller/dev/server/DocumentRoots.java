@@ -0,0 +1,63 @@
+package de.matrixweb.smaller.dev.server;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Maps resource paths to the real files below a list of document-root
+ * folders. The first folder containing a path wins, like in the
+ * {@link de.matrixweb.vfs.wrapped.MergingVFS}.
+ *
+ * @author markusw
+ */
+public class DocumentRoots {
+
+  private static final Logger LOGGER = LoggerFactory
+      .getLogger(DocumentRoots.class);
+
+  private final File[] roots;
+
+  /**
+   * @param folders
+   */
+  public DocumentRoots(final List<File> folders) {
+    this.roots = new File[folders.size()];
+    for (int i = 0, n = folders.size(); i < n; i++) {
+      this.roots[i] = canonicalize(folders.get(i));
+    }
+  }
+
+  static File canonicalize(final File file) {
+    try {
+      return file.getAbsoluteFile().getCanonicalFile();
+    } catch (final IOException e) {
+      LOGGER.warn("Unable to create absolute canonical path for {}: {}", file,
+          e.getMessage());
+      return file.getAbsoluteFile();
+    }
+  }
+
+  /**
+   * @param path
+   *          The resource path (e.g. a request uri)
+   * @return Returns the existing regular file for the given path or
+   *         <code>null</code> if there is none
+   */
+  public File resolve(final String path) {
+    if (path.contains("/../") || path.endsWith("/..")) {
+      return null;
+    }
+    for (final File root : this.roots) {
+      final File file = new File(root, path);
+      if (file.isFile()) {
+        return file;
+      }
+    }
+    return null;
+  }
+
+}
@@ -86,8 +86,7 @@ public class HttpClient {
     this.localport = localport;
     this.socketFactory = SocketFactory.getDefault();
 
-    this.rewritePattern = Pattern.compile("^(http.?://)"
-        + targetHost.getHostName() + "(?::" + targetHost.getPort() + ")?(.*)$");
+    this.rewritePattern = createRewritePattern(targetHost);
 
     this.httpProcessor = new BasicHttpProcessor();
     // Required request interceptors
@@ -234,12 +233,23 @@ public class HttpClient {
   private void rewriteRedirect(final HttpResponse response) {
     final Header location = response.getFirstHeader("Location");
     if (location != null) {
-      final Matcher matcher = this.rewritePattern.matcher(location.getValue());
-      if (matcher.matches()) {
-        response.setHeader("Location", matcher.group(1) + "localhost:"
-            + this.localport + matcher.group(2));
-      }
+      response.setHeader("Location", rewriteLocation(this.rewritePattern,
+          this.localport, location.getValue()));
+    }
+  }
+
+  static Pattern createRewritePattern(final HttpHost targetHost) {
+    return Pattern.compile("^(http.?://)" + targetHost.getHostName()
+        + "(?::" + targetHost.getPort() + ")?(.*)$");
+  }
+
+  static String rewriteLocation(final Pattern rewritePattern,
+      final int localport, final String location) {
+    final Matcher matcher = rewritePattern.matcher(location);
+    if (matcher.matches()) {
+      return matcher.group(1) + "localhost:" + localport + matcher.group(2);
     }
+    return location;
   }
 
   /**
@@ -1,18 +1,30 @@
 package de.matrixweb.smaller.dev.server;
 
 import java.io.IOException;
-import java.util.ArrayList;
+import java.nio.charset.Charset;
 import java.util.HashMap;
-import java.util.List;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
 
 import org.eclipse.jetty.websocket.WebSocket;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
 /**
+ * Each client has its own queue of pending messages which is written by a
+ * sender thread, so slow clients do not delay the broadcast to the others.
+ * Pending messages with the same key are replaced by the latest one.
+ *
  * @author markusw
  */
 public class LiveReloadSocket implements WebSocket.OnTextMessage {
@@ -22,16 +34,51 @@ public class LiveReloadSocket implements WebSocket.OnTextMessage {
 
   private static final ObjectMapper OM = new ObjectMapper();
 
-  private static List<LiveReloadSocket> sockets = new ArrayList<>();
+  private static final int MAX_PENDING = 16;
 
-  private static KeepAliveSocket keepAlive = new KeepAliveSocket();
+  private static final String PING = "ping";
 
-  private Connection connection;
+  /** The number of stylesheet versions kept to create patches */
+  private static final int MAX_VERSIONS = 4;
+
+  private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+  private static final Map<String, Map<String, String>> STYLES = new ConcurrentHashMap<>();
+
+  private static Set<LiveReloadSocket> sockets = new CopyOnWriteArraySet<>();
+
+  private static KeepAliveSocket keepAlive;
+
+  // At most one thread per client is sending. Shared by all servers of the
+  // jvm and never shut down; idle threads are released by the pool.
+  private static final ExecutorService SENDER = Executors
+      .newCachedThreadPool(new ThreadFactoryBuilder()
+          .setNameFormat("smaller-live-reload-%d").setDaemon(true).build());
+
+  private volatile Connection connection;
+
+  private final Map<String, String> pending = new LinkedHashMap<>();
+
+  private boolean sending = false;
+
+  // The stylesheet versions the client has applied
+  private final Map<String, String> acknowledged = new ConcurrentHashMap<>();
+
+  private final Runnable sender = new Runnable() {
+    @Override
+    public void run() {
+      sendPending();
+    }
+  };
 
   /**
    * 
    */
-  public static void start() {
+  public static synchronized void start() {
+    if (keepAlive != null) {
+      keepAlive.stop();
+    }
+    keepAlive = new KeepAliveSocket();
     final Thread thread = new Thread(keepAlive);
     thread.setDaemon(true);
     thread.start();
@@ -40,8 +87,11 @@ public class LiveReloadSocket implements WebSocket.OnTextMessage {
   /**
    * 
    */
-  public static void stop() {
-    keepAlive.stop();
+  public static synchronized void stop() {
+    if (keepAlive != null) {
+      keepAlive.stop();
+      keepAlive = null;
+    }
   }
 
   /**
@@ -54,14 +104,114 @@ public class LiveReloadSocket implements WebSocket.OnTextMessage {
   }
 
   static void sendPing() {
-    broadcastMessage(createMessage("ping", null));
+    broadcastMessage(PING, createMessage(PING, null));
   }
 
   /**
    * @param info
    */
   public static void broadcastReload(final SmallerResourceHandler.PushInfo info) {
-    broadcastMessage(createMessage("change", info));
+    // A full reload supersedes all pending changes
+    final String key = info.isFullReload() ? null : createKey(info.getJs(),
+        info.getCss());
+    broadcastMessage(key, createMessage("change", info));
+  }
+
+  private static String createKey(final String js, final String css) {
+    return "change:" + js + ':' + css;
+  }
+
+  /**
+   * Sends the content of a changed stylesheet to all clients. Clients which
+   * acknowledged a previous version get a patch against that version. Each
+   * distinct message is only serialized once.
+   *
+   * @param css
+   *          The uri of the stylesheet
+   * @param output
+   *          The new stylesheet
+   */
+  public static void broadcastCss(final String css, final BuildOutput output) {
+    final String version = output.getETag(false);
+    final String content = new String(output.getContent(false), UTF_8);
+    final Map<String, String> versions = addVersion(css, version, content);
+
+    final String key = createKey(null, css);
+    final Map<String, String> messages = new HashMap<>();
+    for (final LiveReloadSocket socket : sockets) {
+      if (socket.connection == null) {
+        continue;
+      }
+      String base = socket.acknowledged.get(css);
+      if (version.equals(base)) {
+        continue;
+      }
+      if (base != null && !versions.containsKey(base)) {
+        base = null;
+      }
+      String message = messages.get(base);
+      if (message == null) {
+        message = createMessage("css",
+            createCssPatch(css, version, content, base, versions.get(base)));
+        messages.put(base, message);
+      }
+      socket.enqueue(key, message);
+    }
+  }
+
+  /**
+   * @return Returns a copy of the known versions of the stylesheet
+   */
+  private static Map<String, String> addVersion(final String css,
+      final String version, final String content) {
+    Map<String, String> versions = STYLES.get(css);
+    if (versions == null) {
+      STYLES.putIfAbsent(css, new LinkedHashMap<String, String>());
+      versions = STYLES.get(css);
+    }
+    synchronized (versions) {
+      versions.remove(version);
+      versions.put(version, content);
+      if (versions.size() > MAX_VERSIONS) {
+        final Iterator<String> it = versions.keySet().iterator();
+        it.next();
+        it.remove();
+      }
+      return new HashMap<>(versions);
+    }
+  }
+
+  /**
+   * Creates the data to update a stylesheet. Without a base version the full
+   * content is sent, otherwise only the part between the common prefix and
+   * suffix of both versions.
+   */
+  static Map<String, Object> createCssPatch(final String css,
+      final String version, final String content, final String base,
+      final String previous) {
+    final Map<String, Object> data = new HashMap<>(6);
+    data.put("css", css);
+    data.put("version", version);
+    if (previous == null) {
+      data.put("content", content);
+      return data;
+    }
+    final int max = Math.min(content.length(), previous.length());
+    int prefix = 0;
+    while (prefix < max && content.charAt(prefix) == previous.charAt(prefix)) {
+      prefix++;
+    }
+    int suffix = 0;
+    while (suffix < max - prefix
+        && content.charAt(content.length() - suffix - 1) == previous
+            .charAt(previous.length() - suffix - 1)) {
+      suffix++;
+    }
+    data.put("base", base);
+    data.put("prefix", prefix);
+    data.put("suffix", suffix);
+    data.put("text", content.substring(prefix, content.length() - suffix));
+    return data;
   }
 
   private static String createMessage(final String kind, final Object data) {
@@ -77,14 +227,77 @@ public class LiveReloadSocket implements WebSocket.OnTextMessage {
     return message;
   }
 
-  private static void broadcastMessage(final String message) {
+  /**
+   * @param key
+   *          The key of the message or <code>null</code> if the message
+   *          replaces all pending messages
+   * @param message
+   *          The serialized message shared by all clients
+   */
+  private static void broadcastMessage(final String key, final String message) {
     for (final LiveReloadSocket socket : sockets) {
-      try {
-        socket.connection.sendMessage(message);
-      } catch (final IOException e) {
-        LOGGER.error("Failed to send message to client", e);
-        socket.connection.disconnect();
-        sockets.remove(socket);
+      if (socket.connection != null) {
+        socket.enqueue(key, message);
+      }
+    }
+  }
+
+  private void enqueue(final String key, final String message) {
+    synchronized (this) {
+      if (key == null) {
+        this.pending.clear();
+      }
+      // Re-inserted to keep the order of the latest messages
+      this.pending.remove(key);
+      this.pending.put(key, message);
+      if (this.pending.size() > MAX_PENDING) {
+        final Iterator<String> it = this.pending.keySet().iterator();
+        it.next();
+        it.remove();
+      }
+      if (this.sending) {
+        return;
+      }
+      this.sending = true;
+    }
+    try {
+      SENDER.execute(this.sender);
+    } catch (final RejectedExecutionException e) {
+      LOGGER.warn("Unable to send live-reload message: {}", e.getMessage());
+      synchronized (this) {
+        this.sending = false;
+      }
+    }
+  }
+
+  private void sendPending() {
+    boolean idle = false;
+    try {
+      while (true) {
+        final String message;
+        synchronized (this) {
+          final Iterator<String> it = this.pending.values().iterator();
+          if (!it.hasNext()) {
+            this.sending = false;
+            idle = true;
+            return;
+          }
+          message = it.next();
+          it.remove();
+        }
+        this.connection.sendMessage(message);
+      }
+    } catch (IOException | RuntimeException e) {
+      LOGGER.error("Failed to send message to client", e);
+      sockets.remove(this);
+      this.connection.disconnect();
+    } finally {
+      // Otherwise no further message would ever be sent to this client
+      if (!idle) {
+        synchronized (this) {
+          this.pending.clear();
+          this.sending = false;
+        }
       }
     }
   }
@@ -103,6 +316,24 @@ public class LiveReloadSocket implements WebSocket.OnTextMessage {
    */
   @Override
   public void onMessage(final String data) {
+    if (data.startsWith("{")) {
+      try {
+        final Map<?, ?> message = OM.readValue(data, Map.class);
+        if ("ack".equals(message.get("kind"))) {
+          LOGGER.debug("Client applied {}", message);
+          final String css = String.valueOf(message.get("css"));
+          // Without a version the client dropped the injected stylesheet
+          if (message.get("version") == null) {
+            this.acknowledged.remove(css);
+          } else {
+            this.acknowledged.put(css, String.valueOf(message.get("version")));
+          }
+          return;
+        }
+      } catch (final IOException e) {
+        LOGGER.warn("Invalid live-reload message: {}", data);
+      }
+    }
     LOGGER.info("Received live-reload message: {}", data);
   }
 
@@ -113,12 +344,15 @@ public class LiveReloadSocket implements WebSocket.OnTextMessage {
   public void onClose(final int closeCode, final String message) {
     LOGGER.info("WebSocket closed: {} [code={}]", message, closeCode);
     sockets.remove(this);
+    synchronized (this) {
+      this.pending.clear();
+    }
   }
 
   /** */
   static class KeepAliveSocket implements Runnable {
 
-    private boolean running = true;
+    private volatile boolean running = true;
 
     /**
      * @see java.lang.Runnable#run()
@@ -131,7 +365,9 @@ public class LiveReloadSocket implements WebSocket.OnTextMessage {
         } catch (final InterruptedException e) {
           // Ignore this
         }
-        LiveReloadSocket.sendPing();
+        if (this.running) {
+          LiveReloadSocket.sendPing();
+        }
       }
     }
 
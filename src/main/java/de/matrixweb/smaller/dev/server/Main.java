@@ -7,9 +7,16 @@ import java.net.BindException;
 import java.net.InetSocketAddress;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.eclipse.jetty.server.Server;
 import org.eclipse.jetty.servlet.ServletContextHandler;
@@ -33,6 +40,8 @@ public class Main {
 
   private Logger logger;
 
+  private ResourceWatchdog resourceWatchdog;
+
   private Map<Environment, SmallerResourceHandler> resourceHandlers;
 
   private Server server;
@@ -58,6 +67,7 @@ public class Main {
     }
     final ConfigFile configFile = parseConfigFile(config.getFile());
     updateConfigFileFromCmdLine(configFile, config);
+    final ServerOptions options = createServerOptions(config);
 
     System.setProperty("logback.configurationFile", "logback-dev-server.xml");
     final LoggerContext loggerContext = (LoggerContext) LoggerFactory
@@ -72,18 +82,24 @@ public class Main {
 
     final Manifest manifest = Manifest.fromConfigFile(configFile);
 
-    this.resourceHandlers = new HashMap<>();
-    for (final String envName : configFile.getDevServer().getEnvironments()) {
-      final Environment env = configFile.getEnvironments().get(envName);
-      this.resourceHandlers.put(env,
-          new SmallerResourceHandler(configFile.getDevServer(), env, manifest));
+    this.resourceWatchdog = new ResourceWatchdog(options);
+    try {
+      this.resourceHandlers = createResourceHandlers(configFile, manifest,
+          options);
+    } catch (final IOException | RuntimeException e) {
+      // The watchdog thread would otherwise keep the vm alive
+      stop();
+      throw e;
     }
 
-    final Servlet servlet = new Servlet(configFile, this.resourceHandlers);
+    final Servlet servlet = new Servlet(configFile, options,
+        this.resourceHandlers);
     this.server = new Server(InetSocketAddress.createUnresolved(configFile
         .getDevServer().getIp(), configFile.getDevServer().getPort()));
     final ServletContextHandler handler = new ServletContextHandler();
-    handler.addServlet(new ServletHolder(servlet), "/");
+    final ServletHolder holder = new ServletHolder(servlet);
+    holder.setAsyncSupported(options.isAsyncProxy());
+    handler.addServlet(holder, "/");
     this.server.setHandler(handler);
     try {
       this.server.start();
@@ -100,6 +116,74 @@ public class Main {
     }
   }
 
+  private Map<Environment, SmallerResourceHandler> createResourceHandlers(
+      final ConfigFile configFile, final Manifest manifest,
+      final ServerOptions options) throws IOException {
+    final Map<String, Future<SmallerResourceHandler>> results = new LinkedHashMap<>();
+    final ExecutorService executor = Executors.newFixedThreadPool(Runtime
+        .getRuntime().availableProcessors());
+    boolean initialized = false;
+    try {
+      for (final String envName : configFile.getDevServer().getEnvironments()) {
+        final Environment env = configFile.getEnvironments().get(envName);
+        results.put(envName,
+            executor.submit(new Callable<SmallerResourceHandler>() {
+              @Override
+              public SmallerResourceHandler call() throws IOException {
+                final long start = System.currentTimeMillis();
+                final SmallerResourceHandler handler = new SmallerResourceHandler(
+                    configFile.getDevServer(), env, manifest, options,
+                    Main.this.resourceWatchdog);
+                logInfo("Initialized environment '" + envName + "' in "
+                    + (System.currentTimeMillis() - start) + "ms");
+                return handler;
+              }
+            }));
+      }
+
+      final Map<Environment, SmallerResourceHandler> handlers = new HashMap<>();
+      final List<String> failed = new ArrayList<>();
+      Throwable cause = null;
+      for (final Entry<String, Future<SmallerResourceHandler>> entry : results
+          .entrySet()) {
+        try {
+          handlers.put(configFile.getEnvironments().get(entry.getKey()), entry
+              .getValue().get());
+        } catch (final ExecutionException e) {
+          logError("Failed to initialize environment '" + entry.getKey() + "'",
+              e.getCause());
+          failed.add(entry.getKey());
+          cause = e.getCause();
+        } catch (final InterruptedException e) {
+          Thread.currentThread().interrupt();
+          failed.add(entry.getKey());
+          cause = e;
+          break;
+        }
+      }
+      if (!failed.isEmpty()) {
+        for (final SmallerResourceHandler handler : handlers.values()) {
+          try {
+            handler.dispose();
+          } catch (final IOException e) {
+            logError("Failed to shutdown resource handler", e);
+          }
+        }
+        throw new IOException("Failed to initialize environments " + failed,
+            cause);
+      }
+      initialized = true;
+      return handlers;
+    } finally {
+      if (initialized) {
+        executor.shutdown();
+      } else {
+        // Do not wait for environments nobody is going to serve
+        executor.shutdownNow();
+      }
+    }
+  }
+
   /**
    * 
    */
@@ -115,6 +199,13 @@ public class Main {
         }
       }
     }
+    if (this.resourceWatchdog != null) {
+      try {
+        this.resourceWatchdog.stop();
+      } catch (final IOException e) {
+        logError("Failed to stop resource watchdog", e);
+      }
+    }
     if (this.server != null) {
       try {
         this.server.stop();
@@ -181,6 +272,41 @@ public class Main {
     }
   }
 
+  private ServerOptions createServerOptions(final Cmdline cmdline) {
+    final ServerOptions options = new ServerOptions();
+    if (cmdline.getStreaming() != null) {
+      options.setStreaming(cmdline.getStreaming());
+    }
+    if (cmdline.getAsyncProxy() != null) {
+      options.setAsyncProxy(cmdline.getAsyncProxy());
+    }
+    if (cmdline.getWatchQuietPeriod() != null) {
+      options.setWatchQuietPeriod(cmdline.getWatchQuietPeriod());
+    }
+    if (cmdline.getWatchMaxWait() != null) {
+      options.setWatchMaxWait(cmdline.getWatchMaxWait());
+    }
+    if (cmdline.getIncrementalBuild() != null) {
+      options.setIncrementalBuild(cmdline.getIncrementalBuild());
+    }
+    if (cmdline.getWaitForBuild() != null) {
+      options.setWaitForBuild(cmdline.getWaitForBuild());
+    }
+    if (cmdline.getBuildCache() != null) {
+      options.setBuildCache(cmdline.getBuildCache());
+    }
+    if (cmdline.getLazy() != null) {
+      options.setLazy(cmdline.getLazy());
+    }
+    if (cmdline.getWatchPolling() != null) {
+      options.setWatchPolling(cmdline.getWatchPolling());
+    }
+    if (cmdline.getCssInject() != null) {
+      options.setCssInject(cmdline.getCssInject());
+    }
+    return options;
+  }
+
   private void logInfo(final String msg) {
     if (this.logger != null) {
       this.logger.info(msg);
@@ -189,7 +315,7 @@ public class Main {
     }
   }
 
-  private void logError(final String msg, final Exception e) {
+  private void logError(final String msg, final Throwable e) {
     if (this.logger != null) {
       this.logger.error(msg, e);
     } else {
@@ -0,0 +1,82 @@
+package de.matrixweb.smaller.dev.server;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.apache.commons.io.FilenameUtils;
+
+/**
+ * Decides which resources could be inputs of a process description. The
+ * pipeline executes all processors at once and does not report the resources
+ * it reads, so the decision is based on the kind of output only and is
+ * deliberately conservative: a change is only ignored if the output could not
+ * read that kind of resource at all, e.g. a less file for a javascript
+ * bundle or a coffee-script file for a stylesheet. Everything else (including
+ * css, images or json which a bundle might inline) triggers a rebuild of the
+ * whole process description.
+ *
+ * @author markusw
+ */
+public class ProcessInputs {
+
+  /** Sources which have to be compiled to a stylesheet to be usable */
+  private static final Set<String> STYLESHEET_SOURCES = new HashSet<>(
+      Arrays.asList("less", "sass", "scss", "styl"));
+
+  /** Scripts and templates which could not be imported by stylesheets */
+  private static final Set<String> SCRIPT_SOURCES = new HashSet<>(
+      Arrays.asList("js", "coffee", "ts", "jsx", "hbs", "handlebars",
+          "mustache"));
+
+  private static final Set<String> PASSIVE_RESOURCES = new HashSet<>(
+      Arrays.asList("html", "htm"));
+
+  private final String inputFile;
+
+  private final Set<String> foreign;
+
+  /**
+   * @param inputFile
+   * @param outputFile
+   */
+  public ProcessInputs(final String inputFile, final String outputFile) {
+    this.inputFile = inputFile;
+    final String ext = FilenameUtils.getExtension(outputFile).toLowerCase();
+    if ("js".equals(ext)) {
+      this.foreign = STYLESHEET_SOURCES;
+    } else if ("css".equals(ext)) {
+      this.foreign = SCRIPT_SOURCES;
+    } else {
+      this.foreign = null;
+    }
+  }
+
+  /**
+   * @param changedResources
+   *          The changed resource paths or <code>null</code> if everything
+   *          could have changed
+   * @return Returns true if one of the given resources could be an input
+   */
+  public boolean isAffectedBy(final Collection<String> changedResources) {
+    if (changedResources == null || this.foreign == null) {
+      return true;
+    }
+    for (final String path : changedResources) {
+      if (path.equals(this.inputFile)) {
+        return true;
+      }
+      if (path.endsWith(".cfg.json")) {
+        // Request configurations are never processed
+        continue;
+      }
+      final String ext = FilenameUtils.getExtension(path).toLowerCase();
+      if (!this.foreign.contains(ext) && !PASSIVE_RESOURCES.contains(ext)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+}
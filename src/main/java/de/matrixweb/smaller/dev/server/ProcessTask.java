@@ -0,0 +1,167 @@
+package de.matrixweb.smaller.dev.server;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collection;
+import java.util.Collections;
+
+import org.apache.commons.io.IOUtils;
+
+import de.matrixweb.smaller.common.Manifest;
+import de.matrixweb.smaller.common.ProcessDescription;
+import de.matrixweb.smaller.common.Version;
+import de.matrixweb.smaller.pipeline.Pipeline;
+import de.matrixweb.smaller.resource.ProcessorFactory;
+import de.matrixweb.smaller.resource.ResourceResolver;
+import de.matrixweb.smaller.resource.impl.JavaEEProcessorFactory;
+import de.matrixweb.vfs.VFS;
+import de.matrixweb.vfs.VFile;
+
+/**
+ * A single process description of an environment together with its last
+ * published output. Each task has its own processors; tasks sharing a vfs
+ * have to be executed one after another.
+ *
+ * @author markusw
+ */
+public class ProcessTask {
+
+  private final ProcessDescription processDescription;
+
+  private final ProcessInputs inputs;
+
+  private final ProcessorFactory processorFactory;
+
+  private final Pipeline pipeline;
+
+  private volatile BuildOutput output;
+
+  private volatile boolean restored = false;
+
+  /**
+   * @param processDescription
+   */
+  public ProcessTask(final ProcessDescription processDescription) {
+    this.processDescription = processDescription;
+    this.inputs = new ProcessInputs(processDescription.getInputFile(),
+        processDescription.getOutputFile());
+    this.processorFactory = new JavaEEProcessorFactory();
+    this.pipeline = new Pipeline(this.processorFactory);
+  }
+
+  /**
+   * @return the processDescription
+   */
+  public ProcessDescription getProcessDescription() {
+    return this.processDescription;
+  }
+
+  /**
+   * @return the input file of the process description
+   */
+  public String getInputFile() {
+    return this.processDescription.getInputFile();
+  }
+
+  /**
+   * @return the output file of the process description
+   */
+  public String getOutputFile() {
+    return this.processDescription.getOutputFile();
+  }
+
+  /**
+   * @param changedResources
+   * @return Returns true if the given resources could be inputs of this task
+   * @see ProcessInputs#isAffectedBy(Collection)
+   */
+  public boolean isAffectedBy(final Collection<String> changedResources) {
+    return this.inputs.isAffectedBy(changedResources);
+  }
+
+  /**
+   * @param path
+   * @return Returns true if the given resource could be an input of this task
+   */
+  public boolean isInput(final String path) {
+    return this.inputs.isAffectedBy(Collections.singletonList(path));
+  }
+
+  /**
+   * @return Returns true if the published output was restored without
+   *         executing the pipeline, so the output is not available in the
+   *         {@link VFS}
+   */
+  public boolean isRestored() {
+    return this.restored;
+  }
+
+  /**
+   * @param content
+   *          The previously built content
+   * @param version
+   *          The number of the current build
+   * @return Returns true if the content of the published output changed
+   * @throws IOException
+   */
+  public boolean restore(final byte[] content, final long version)
+      throws IOException {
+    this.restored = true;
+    return publishOutput(content, version);
+  }
+
+  /**
+   * @return the last published output or <code>null</code> if there was no
+   *         successful build yet
+   */
+  public BuildOutput getOutput() {
+    return this.output;
+  }
+
+  /**
+   * Executes the pipeline and publishes the new output. The published output
+   * is only replaced after a successful build.
+   *
+   * @param vfs
+   * @param resolver
+   * @param manifest
+   * @param version
+   *          The number of the current build
+   * @return Returns true if the content of the published output changed
+   * @throws IOException
+   */
+  public boolean execute(final VFS vfs, final ResourceResolver resolver,
+      final Manifest manifest, final long version) throws IOException {
+    this.pipeline.execute(Version.getCurrentVersion(), vfs, resolver,
+        manifest, this.processDescription);
+    // TODO: Add test run
+
+    final VFile file = vfs.find(getOutputFile());
+    final byte[] content;
+    try (InputStream in = file.getInputStream()) {
+      content = IOUtils.toByteArray(in);
+    }
+    this.restored = false;
+    return publishOutput(content, version);
+  }
+
+  private boolean publishOutput(final byte[] content, final long version)
+      throws IOException {
+    final BuildOutput next = new BuildOutput(content,
+        System.currentTimeMillis(), version);
+    // Keep the current instance (and its modification date) if nothing changed
+    if (next.isSameContent(this.output)) {
+      return false;
+    }
+    this.output = next;
+    return true;
+  }
+
+  /**
+   *
+   */
+  public void dispose() {
+    this.processorFactory.dispose();
+  }
+
+}
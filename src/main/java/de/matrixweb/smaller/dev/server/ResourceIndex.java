@@ -0,0 +1,75 @@
+package de.matrixweb.smaller.dev.server;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The set of resources of an environment. It is populated once and then
+ * patched with the changes reported by the {@link ResourceWatchdog}, so
+ * membership checks never touch the file system.
+ *
+ * @author markusw
+ */
+public class ResourceIndex {
+
+  private final ResourceMatcher matcher;
+
+  private final Set<String> resources = Collections
+      .newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+  /**
+   * @param matcher
+   *          The matcher deciding if new files belong to the index
+   * @param resources
+   *          The initial resources
+   */
+  public ResourceIndex(final ResourceMatcher matcher,
+      final Collection<String> resources) {
+    this.matcher = matcher;
+    this.resources.addAll(resources);
+  }
+
+  /**
+   * @param path
+   * @return Returns true if the given path is a resource of this index
+   */
+  public boolean contains(final String path) {
+    return this.resources.contains(path);
+  }
+
+  /**
+   * Applies the given changes to the index.
+   *
+   * @param changes
+   * @return Returns the changed paths which are (or were) part of this index
+   */
+  public List<String> update(final ChangeSet changes) {
+    final List<String> relevant = new ArrayList<>();
+    for (final String path : changes.getDeleted()) {
+      if (this.resources.remove(path)) {
+        relevant.add(path);
+      }
+    }
+    for (final String path : changes.getCreated()) {
+      if (this.matcher.matches(path)) {
+        this.resources.add(path);
+        relevant.add(path);
+      }
+    }
+    for (final String path : changes.getModified()) {
+      if (this.resources.contains(path)) {
+        relevant.add(path);
+      } else if (this.matcher.matches(path)) {
+        // Files created before their folder was watched
+        this.resources.add(path);
+        relevant.add(path);
+      }
+    }
+    return relevant;
+  }
+
+}
@@ -0,0 +1,145 @@
+package de.matrixweb.smaller.dev.server;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Matches resource paths against ant-style include and exclude patterns
+ * (<code>**</code> for any number of folders, <code>*</code> and
+ * <code>?</code> within a single path segment).
+ *
+ * @author markusw
+ */
+public class ResourceMatcher {
+
+  private final List<Pattern> includes = new ArrayList<>();
+
+  private final List<Pattern> excludes = new ArrayList<>();
+
+  private final List<String> includePrefixes = new ArrayList<>();
+
+  private final List<Pattern> excludedFolders = new ArrayList<>();
+
+  /**
+   * @param includes
+   *          The include patterns; if empty all paths are included
+   * @param excludes
+   *          The exclude patterns
+   */
+  public ResourceMatcher(final List<String> includes,
+      final List<String> excludes) {
+    for (final String include : includes) {
+      this.includes.add(compile(include));
+      this.includePrefixes.add(literalPrefix(include));
+    }
+    for (final String exclude : excludes) {
+      this.excludes.add(compile(exclude));
+      String pattern = normalize(exclude);
+      if (pattern.endsWith("/")) {
+        pattern += "**";
+      }
+      if (pattern.endsWith("/**")) {
+        // Excludes everything below the matching folders
+        this.excludedFolders.add(compile(pattern.substring(0,
+            pattern.length() - 3)));
+      }
+    }
+  }
+
+  /**
+   * @return Returns the folders of the pattern before the first wildcard
+   *         (e.g. <code>js/</code> for <code>js/**&#47;*.js</code>)
+   */
+  private static String literalPrefix(final String antPattern) {
+    final String pattern = normalize(antPattern);
+    int wildcard = pattern.length();
+    for (int i = 0; i < pattern.length(); i++) {
+      if (pattern.charAt(i) == '*' || pattern.charAt(i) == '?') {
+        wildcard = i;
+        break;
+      }
+    }
+    return pattern.substring(0, pattern.lastIndexOf('/', wildcard - 1) + 1);
+  }
+
+  static Pattern compile(final String antPattern) {
+    String pattern = normalize(antPattern);
+    if (pattern.endsWith("/")) {
+      pattern += "**";
+    }
+    final StringBuilder regex = new StringBuilder();
+    int i = 0;
+    while (i < pattern.length()) {
+      final char c = pattern.charAt(i);
+      if (pattern.startsWith("**/", i)) {
+        regex.append("(?:.*/)?");
+        i += 3;
+      } else if (pattern.startsWith("**", i)) {
+        regex.append(".*");
+        i += 2;
+      } else if (c == '*') {
+        regex.append("[^/]*");
+        i++;
+      } else if (c == '?') {
+        regex.append("[^/]");
+        i++;
+      } else {
+        regex.append(Pattern.quote(String.valueOf(c)));
+        i++;
+      }
+    }
+    return Pattern.compile(regex.toString());
+  }
+
+  private static String normalize(final String path) {
+    return path.startsWith("/") ? path.substring(1) : path;
+  }
+
+  /**
+   * @param path
+   *          The resource path
+   * @return Returns true if the path is included and not excluded
+   */
+  public boolean matches(final String path) {
+    final String normalized = normalize(path);
+    return isIncluded(normalized) && !matchesAny(this.excludes, normalized);
+  }
+
+  /**
+   * @param folder
+   *          The folder path
+   * @return Returns false if no resource below the given folder could match
+   */
+  public boolean matchesFolder(final String folder) {
+    final String normalized = normalize(folder);
+    if (matchesAny(this.excludedFolders, normalized)) {
+      return false;
+    }
+    if (this.includes.isEmpty()) {
+      return true;
+    }
+    final String prefix = normalized.isEmpty() ? "" : normalized + '/';
+    for (final String include : this.includePrefixes) {
+      if (prefix.startsWith(include) || include.startsWith(prefix)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private boolean isIncluded(final String path) {
+    return this.includes.isEmpty() || matchesAny(this.includes, path);
+  }
+
+  private static boolean matchesAny(final List<Pattern> patterns,
+      final String path) {
+    for (final Pattern pattern : patterns) {
+      if (pattern.matcher(path).matches()) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+}
@@ -2,25 +2,43 @@ package de.matrixweb.smaller.dev.server;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.FileVisitResult;
 import java.nio.file.Files;
 import java.nio.file.LinkOption;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import de.matrixweb.smaller.config.Environment;
 import de.matrixweb.smaller.dev.server.watch.FileSystemWatch;
+import de.matrixweb.smaller.dev.server.watch.FileSystemWatch.DirectoryFilter;
 import de.matrixweb.smaller.dev.server.watch.FileSystemWatch.FileSystemClosedWatchServiceException;
 import de.matrixweb.smaller.dev.server.watch.FileSystemWatch.FileSystemWatchKey;
 import de.matrixweb.smaller.dev.server.watch.FileSystemWatch.FileSytemWatchEvent;
+import de.matrixweb.smaller.dev.server.watch.SnapshotIndex;
+import de.matrixweb.smaller.dev.server.watch.SnapshotIndex.Diff;
+import de.matrixweb.smaller.dev.server.watch.WatchRegistry;
 
 /**
+ * Process-wide watchdog for the resource folders of all environments.
+ * Folders shared between environments are watched only once; each burst of
+ * changes is mapped to the resources of every subscribed environment.
+ *
  * @author markusw
  */
 public class ResourceWatchdog {
@@ -28,13 +46,38 @@ public class ResourceWatchdog {
   private static final Logger LOGGER = LoggerFactory
       .getLogger(ResourceWatchdog.class);
 
-  private final SmallerResourceHandler resourceHandler;
+  private static final Set<String> IGNORED_FOLDERS = new HashSet<>(
+      Arrays.asList(".git", ".svn", ".hg"));
 
-  private final Environment env;
+  private static final ResourceMatcher ALL = new ResourceMatcher(
+      Collections.<String> emptyList(), Collections.<String> emptyList());
 
   private final FileSystemWatch watcher;
 
-  private final Map<FileSystemWatchKey, Path> watches;
+  private final WatchRegistry watches = new WatchRegistry();
+
+  private final SnapshotIndex snapshot = new SnapshotIndex();
+
+  private final DirectoryFilter directoryFilter = new DirectoryFilter() {
+    @Override
+    public boolean accept(final Path dir) {
+      return isWatchedFolder(dir);
+    }
+  };
+
+  private final List<Subscription> subscriptions = new CopyOnWriteArrayList<>();
+
+  /**
+   * The roots of all subscriptions by their absolute and their canonical
+   * path. Replaced on each (un)subscription, so event paths are mapped to
+   * resources without any file system access.
+   */
+  private volatile Map<Path, List<WatchedRoot>> roots = Collections
+      .emptyMap();
+
+  private final long quietPeriod;
+
+  private final long maxWait;
 
   private boolean runWatchdog = true;
 
@@ -47,29 +90,141 @@ public class ResourceWatchdog {
   };
 
   /**
+   * @param options
+   * @throws IOException
+   */
+  public ResourceWatchdog(final ServerOptions options) throws IOException {
+    this.quietPeriod = options.getWatchQuietPeriod();
+    this.maxWait = Math.max(options.getWatchMaxWait(), this.quietPeriod);
+    this.watcher = FileSystemWatch.Factory.create(this.watches,
+        this.directoryFilter, this.snapshot, options.isWatchPolling());
+
+    final Thread thread = new Thread(this.watchdog, "Smaller Resource Watchdog");
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  /**
+   * Watches the folders of the given environment and reports their changes
+   * to the given handler.
+   *
    * @param resourceHandler
    * @param env
+   * @param matcher
+   *          The matcher for the resources of the environment; folders
+   *          without any matching resource are not watched
    * @throws IOException
    */
-  public ResourceWatchdog(final SmallerResourceHandler resourceHandler,
-      final Environment env) throws IOException {
-    this.resourceHandler = resourceHandler;
-    this.env = env;
-    this.watches = new HashMap<FileSystemWatchKey, Path>();
-    this.watcher = FileSystemWatch.Factory.create(this.watches);
-
+  public void subscribe(final SmallerResourceHandler resourceHandler,
+      final Environment env, final ResourceMatcher matcher) throws IOException {
+    final Subscription subscription = new Subscription(resourceHandler);
     for (final String root : env.getFiles().getFolder()) {
-      LOGGER.debug("Watching {}", root);
-      this.watcher.register(Paths.get(root));
+      subscription.roots.add(new WatchedRoot(subscription, root, matcher));
     }
     for (final String root : env.getTestFiles().getFolder()) {
-      LOGGER.debug("Watching {}", root);
-      this.watcher.register(Paths.get(root));
+      subscription.roots.add(new WatchedRoot(subscription, root, ALL));
     }
+    // Subscribe first, the directory filter depends on the roots
+    this.subscriptions.add(subscription);
+    updateRoots();
+    for (final WatchedRoot root : subscription.roots) {
+      LOGGER.debug("Watching {}", root.path);
+      this.watcher.register(root.path);
+    }
+  }
 
-    final Thread thread = new Thread(this.watchdog, "Smaller Resource Watchdog");
-    thread.setDaemon(true);
-    thread.start();
+  private synchronized void updateRoots() {
+    final Map<Path, List<WatchedRoot>> roots = new HashMap<>();
+    for (final Subscription subscription : this.subscriptions) {
+      for (final WatchedRoot root : subscription.roots) {
+        addRoot(roots, root.path, root);
+        if (!root.canonical.equals(root.path)) {
+          addRoot(roots, root.canonical, root);
+        }
+      }
+    }
+    this.roots = roots;
+  }
+
+  private static void addRoot(final Map<Path, List<WatchedRoot>> roots,
+      final Path path, final WatchedRoot root) {
+    List<WatchedRoot> list = roots.get(path);
+    if (list == null) {
+      list = new ArrayList<>(1);
+      roots.put(path, list);
+    }
+    list.add(root);
+  }
+
+  /**
+   * Finds the roots containing the given path by looking up the path and its
+   * parents.
+   *
+   * @param path
+   *          An absolute and normalized path
+   * @return Returns the resources (relative to their root) matching the path
+   */
+  private List<Resource> findResources(final Path path) {
+    final Map<Path, List<WatchedRoot>> roots = this.roots;
+    List<Resource> resources = Collections.emptyList();
+    for (Path parent = path; parent != null; parent = parent.getParent()) {
+      final List<WatchedRoot> matching = roots.get(parent);
+      if (matching != null) {
+        final String relative = parent.relativize(path).toString()
+            .replace(File.separatorChar, '/');
+        if (resources.isEmpty()) {
+          resources = new ArrayList<>(matching.size());
+        }
+        for (final WatchedRoot root : matching) {
+          resources.add(new Resource(root, relative));
+        }
+      }
+    }
+    return resources;
+  }
+
+  private boolean isWatchedFolder(final Path dir) {
+    final Path name = dir.getFileName();
+    if (name != null && IGNORED_FOLDERS.contains(name.toString())) {
+      return false;
+    }
+    for (final Resource resource : findResources(dir.toAbsolutePath()
+        .normalize())) {
+      if (resource.root.matcher.matchesFolder(resource.relative)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private boolean isWatchedFile(final Path file) {
+    for (final Resource resource : findResources(file)) {
+      if (resource.isWatched()) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static boolean isInIgnoredFolder(final String resource) {
+    for (final String folder : IGNORED_FOLDERS) {
+      if (resource.contains('/' + folder + '/')) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * @param resourceHandler
+   */
+  public void unsubscribe(final SmallerResourceHandler resourceHandler) {
+    for (final Subscription subscription : this.subscriptions) {
+      if (subscription.resourceHandler == resourceHandler) {
+        this.subscriptions.remove(subscription);
+      }
+    }
+    updateRoots();
   }
 
   @SuppressWarnings("unchecked")
@@ -79,100 +234,274 @@ public class ResourceWatchdog {
 
   private void run() {
     while (this.runWatchdog) {
-      FileSystemWatchKey key;
       try {
-        key = this.watcher.take();
-        LOGGER.debug("Got watch-key: {}", key);
+        // Environments without changes keep their running builds
+        for (final Entry<Subscription, ChangeSet> entry : map(
+            collectChanges()).entrySet()) {
+          entry.getKey().resourceHandler.smallerResources(entry.getValue());
+        }
       } catch (final FileSystemClosedWatchServiceException e) {
         this.runWatchdog = false;
-        continue;
       } catch (final InterruptedException e) {
         continue;
       }
-      final List<String> changedResources = loopEvents(key,
-          this.watches.get(key));
+    }
+  }
+
+  /**
+   * Collects the events of all keys until there are no further events for
+   * the quiet period or the maximum wait time since the first event is
+   * reached. Directories which lost events are rescanned afterwards. The
+   * returned changes contain absolute file paths.
+   */
+  private ChangeSet collectChanges() throws InterruptedException {
+    final ChangeSet changes = new ChangeSet();
+    final Set<Path> overflowed = new HashSet<>();
+    final Set<Subscription> announced = new HashSet<>();
+    FileSystemWatchKey key = this.watcher.take();
+    final long deadline = System.currentTimeMillis() + this.maxWait;
+    while (key != null) {
+      LOGGER.debug("Got watch-key: {}", key);
+      final ChangeSet keyChanges = loopEvents(key, this.watches.get(key),
+          overflowed);
+      // Requests of affected environments wait for the upcoming build
+      for (final Subscription subscription : map(keyChanges).keySet()) {
+        if (announced.add(subscription)) {
+          subscription.resourceHandler.changesPending();
+        }
+      }
+      changes.merge(keyChanges);
       final boolean valid = key.reset();
       if (!valid) {
         this.watches.remove(key);
       }
-      if (changedResources.size() > 0) {
-        this.resourceHandler.smallerResources(changedResources);
+      final long remaining = deadline - System.currentTimeMillis();
+      if (remaining <= 0) {
+        break;
       }
+      key = this.watcher.poll(Math.min(this.quietPeriod, remaining),
+          TimeUnit.MILLISECONDS);
     }
+    if (!overflowed.isEmpty()) {
+      changes.merge(recover(overflowed));
+    }
+    return changes;
   }
 
-  private List<String> loopEvents(final FileSystemWatchKey key, final Path path) {
-    final List<String> changedResources = new ArrayList<>();
+  private ChangeSet loopEvents(final FileSystemWatchKey key, final Path path,
+      final Set<Path> overflowed) {
+    final ChangeSet changes = new ChangeSet();
+    if (path == null) {
+      return changes;
+    }
 
-    final List<Path> checked = new ArrayList<Path>();
     for (final FileSytemWatchEvent<?> event : key.pollEvents()) {
       LOGGER.debug("Polled event: {}", event);
       final FileSytemWatchEvent.Kind<?> kind = event.kind();
       if (kind.isOverflow()) {
+        overflowed.add(path);
         continue;
       }
       final FileSytemWatchEvent<Path> ev = cast(event);
       final Path child = path.resolve(ev.context());
-      if (!checked.contains(child)) {
-        checked.add(child);
-        LOGGER.debug("WatchEvent for {}", child);
-        findResourceRoot(changedResources, child);
-        watchNewDirectories(kind, child);
+      LOGGER.debug("WatchEvent for {}", child);
+      final BasicFileAttributes attrs = readAttributes(child);
+      if (attrs == null) {
+        this.snapshot.remove(child);
+      } else if (attrs.isRegularFile()) {
+        this.snapshot.put(child, attrs);
+      }
+      if (attrs != null && attrs.isDirectory()) {
+        if (kind.isEntryCreate() && isWatchedFolder(child)) {
+          watchNewDirectory(child, changes);
+        }
+      } else if (!isWatchedFile(child)) {
+        LOGGER.debug("Ignored change of {}", child);
+      } else if (kind.isEntryDelete()) {
+        changes.deleted(child.toString());
+      } else if (kind.isEntryCreate()) {
+        changes.created(child.toString());
+      } else {
+        changes.modified(child.toString());
       }
     }
 
-    return changedResources;
+    return changes;
   }
 
-  private void findResourceRoot(final List<String> changedResources,
-      final Path child) {
-    File file = child.toFile();
+  private static BasicFileAttributes readAttributes(final Path path) {
     try {
-      file = file.getCanonicalFile().getAbsoluteFile();
+      return Files.readAttributes(path, BasicFileAttributes.class,
+          LinkOption.NOFOLLOW_LINKS);
     } catch (final IOException e) {
-      LOGGER.warn("Unable to create absolute canonical path for {}: {}", file,
-          e.getMessage());
+      return null;
     }
-    for (final String folder : this.env.getFiles().getFolder()) {
-      findResourceRoot(changedResources, file, folder);
+  }
+
+  /**
+   * Finds the changes of directories which lost events by comparing their
+   * current state with the snapshot.
+   */
+  private ChangeSet recover(final Set<Path> dirs) {
+    LOGGER.info("Lost file events, rescanning {} folder(s)", dirs.size());
+    final ChangeSet changes = new ChangeSet();
+    final Diff diff = this.snapshot.rescan(dirs, this.directoryFilter);
+    for (final Path file : diff.getCreated()) {
+      if (isWatchedFile(file)) {
+        changes.created(file.toString());
+      }
     }
-    for (final String folder : this.env.getTestFiles().getFolder()) {
-      findResourceRoot(changedResources, file, folder);
+    for (final Path file : diff.getModified()) {
+      if (isWatchedFile(file)) {
+        changes.modified(file.toString());
+      }
+    }
+    for (final Path file : diff.getDeleted()) {
+      if (isWatchedFile(file)) {
+        changes.deleted(file.toString());
+      }
+    }
+    // Folders created meanwhile are not watched yet
+    for (final Path dir : dirs) {
+      try {
+        this.watcher.register(dir);
+      } catch (final IOException e) {
+        LOGGER.debug("Unable to watch {}: {}", dir, e.getMessage());
+      }
     }
+    return changes;
   }
 
-  private void findResourceRoot(final List<String> changedResources,
-      final File file, final String folder) {
-    File root = new File(folder);
+  private void watchNewDirectory(final Path dir, final ChangeSet changes) {
     try {
-      root = root.getAbsoluteFile().getCanonicalFile();
-    } catch (final IOException e) {
-      LOGGER.warn("Unable to create absolute canonical path for {}: {}", root,
-          e.getMessage());
-    }
-    LOGGER.debug("Check root path {} and change {}", root, file);
-    if (file.getPath().startsWith(root.getPath())) {
-      changedResources.add(file.getPath().substring(root.getPath().length()));
+      // TODO: Check if this works for all providers
+      this.watcher.register(dir);
+      // Files created together with the folder are not reported
+      Files.walkFileTree(dir, new SimpleFileVisitor<Path>() {
+        @Override
+        public FileVisitResult preVisitDirectory(final Path subdir,
+            final BasicFileAttributes attrs) throws IOException {
+          return isWatchedFolder(subdir) ? FileVisitResult.CONTINUE
+              : FileVisitResult.SKIP_SUBTREE;
+        }
+
+        @Override
+        public FileVisitResult visitFile(final Path file,
+            final BasicFileAttributes attrs) throws IOException {
+          if (isWatchedFile(file)) {
+            changes.created(file.toString());
+          }
+          return FileVisitResult.CONTINUE;
+        }
+      });
+    } catch (final IOException x) {
+      // Ignore this one
     }
   }
 
-  private void watchNewDirectories(final FileSytemWatchEvent.Kind<?> kind,
-      final Path child) {
-    if (kind.isEntryCreate()) {
-      try {
-        if (Files.isDirectory(child, LinkOption.NOFOLLOW_LINKS)) {
-          // TODO: Check if this works for all providers
-          this.watcher.register(child);
+  /**
+   * @throws IOException
+   */
+  public void stop() throws IOException {
+    this.runWatchdog = false;
+    this.watcher.close();
+  }
+
+  /**
+   * Maps absolute file paths to the resource paths of the subscriptions.
+   */
+  private Map<Subscription, ChangeSet> map(final ChangeSet changes) {
+    final Map<Subscription, ChangeSet> mapped = new HashMap<>();
+    for (final String file : changes.getCreated()) {
+      for (final Resource resource : findResources(Paths.get(file))) {
+        if (resource.isWatched()) {
+          getChanges(mapped, resource).created(resource.getPath());
+        }
+      }
+    }
+    for (final String file : changes.getModified()) {
+      for (final Resource resource : findResources(Paths.get(file))) {
+        if (resource.isWatched()) {
+          getChanges(mapped, resource).modified(resource.getPath());
+        }
+      }
+    }
+    for (final String file : changes.getDeleted()) {
+      for (final Resource resource : findResources(Paths.get(file))) {
+        if (resource.isWatched()) {
+          getChanges(mapped, resource).deleted(resource.getPath());
         }
-      } catch (final IOException x) {
-        // Ignore this one
       }
     }
+    return mapped;
   }
 
-  void stop() throws IOException {
-    this.runWatchdog = false;
-    this.watcher.close();
+  private static ChangeSet getChanges(
+      final Map<Subscription, ChangeSet> mapped, final Resource resource) {
+    ChangeSet changes = mapped.get(resource.root.subscription);
+    if (changes == null) {
+      changes = new ChangeSet();
+      mapped.put(resource.root.subscription, changes);
+    }
+    return changes;
+  }
+
+  private static class Subscription {
+
+    private final SmallerResourceHandler resourceHandler;
+
+    private final List<WatchedRoot> roots = new ArrayList<>();
+
+    Subscription(final SmallerResourceHandler resourceHandler) {
+      this.resourceHandler = resourceHandler;
+    }
+
+  }
+
+  private static class WatchedRoot {
+
+    private final Subscription subscription;
+
+    private final Path path;
+
+    private final Path canonical;
+
+    private final ResourceMatcher matcher;
+
+    WatchedRoot(final Subscription subscription, final String folder,
+        final ResourceMatcher matcher) {
+      this.subscription = subscription;
+      this.path = Paths.get(folder).toAbsolutePath().normalize();
+      // Resolved once, events for symlinked roots could use either path
+      this.canonical = DocumentRoots.canonicalize(new File(folder)).toPath();
+      this.matcher = matcher;
+    }
+
+  }
+
+  /**
+   * A path below a root.
+   */
+  private static class Resource {
+
+    private final WatchedRoot root;
+
+    private final String relative;
+
+    Resource(final WatchedRoot root, final String relative) {
+      this.root = root;
+      this.relative = relative;
+    }
+
+    String getPath() {
+      return '/' + this.relative;
+    }
+
+    boolean isWatched() {
+      final String path = getPath();
+      return !isInIgnoredFolder(path) && this.root.matcher.matches(path);
+    }
+
   }
 
 }
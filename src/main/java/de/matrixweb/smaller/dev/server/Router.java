@@ -0,0 +1,188 @@
+package de.matrixweb.smaller.dev.server;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
+
+import de.matrixweb.smaller.config.ConfigFile;
+import de.matrixweb.smaller.config.Environment;
+
+/**
+ * Routing table from request uris to the environments handling them.
+ * <p>
+ * Plain process uris (without regular expression characters except the dot)
+ * are looked up in a hash map, real patterns are compiled once. Template and
+ * configuration lookups by file are cached until one of the resource
+ * handlers reports changed resources. If routes overlap, the environment
+ * declared first wins.
+ *
+ * @author markusw
+ */
+public class Router implements SmallerResourceHandler.ResourceListener {
+
+  private static final Pattern REGEX_CHARS = Pattern
+      .compile("[\\\\\\[\\]{}()*+?^$|]");
+
+  private static final int MAX_CACHED_ROUTES = 10000;
+
+  private static final Route NO_ROUTE = new Route(null);
+
+  private final Map<Environment, SmallerResourceHandler> resourceHandlers;
+
+  // In the order of their declaration
+  private final List<Environment> environments = new ArrayList<>();
+
+  private final Map<String, Environment> processUris = new HashMap<>();
+
+  private final List<ProcessPattern> processPatterns = new ArrayList<>();
+
+  private final ConcurrentMap<String, Route> fileRoutes = new ConcurrentHashMap<>();
+
+  private final AtomicInteger generation = new AtomicInteger();
+
+  /**
+   * @param configFile
+   * @param resourceHandlers
+   */
+  public Router(final ConfigFile configFile,
+      final Map<Environment, SmallerResourceHandler> resourceHandlers) {
+    this.resourceHandlers = resourceHandlers;
+    for (final String envName : configFile.getDevServer().getEnvironments()) {
+      final Environment env = configFile.getEnvironments().get(envName);
+      this.environments.add(env);
+      if (env.getProcess() != null) {
+        addProcessRoute(env.getProcess(), env);
+      }
+    }
+    for (final Environment env : this.environments) {
+      final SmallerResourceHandler resourceHandler = resourceHandlers.get(env);
+      if (resourceHandler == null) {
+        continue;
+      }
+      // Each output is served at its own uri, even if matched by a pattern
+      for (final String output : resourceHandler.getOutputFiles()) {
+        if (!this.processUris.containsKey(output)) {
+          this.processUris.put(output, env);
+        }
+      }
+      resourceHandler.addResourceListener(this);
+    }
+  }
+
+  private void addProcessRoute(final String process, final Environment env) {
+    if (REGEX_CHARS.matcher(process).find()) {
+      this.processPatterns.add(new ProcessPattern(Pattern.compile(process), env));
+    } else if (!this.processUris.containsKey(process)
+        && findPattern(process) == null) {
+      // Only if no earlier pattern already claims this uri
+      this.processUris.put(process, env);
+    }
+  }
+
+  private Environment findPattern(final String uri) {
+    for (final ProcessPattern pattern : this.processPatterns) {
+      if (pattern.pattern.matcher(uri).matches()) {
+        return pattern.env;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * @param uri
+   * @return Returns the environment which processes the given uri or
+   *         <code>null</code> if there is none
+   */
+  public Environment findEnvironmentByUri(final String uri) {
+    final Environment env = this.processUris.get(uri);
+    if (env != null) {
+      return env;
+    }
+    return this.processPatterns.isEmpty() ? null : findPattern(uri);
+  }
+
+  /**
+   * @param file
+   * @return Returns the route to the environment containing a template or
+   *         request configuration for the given file or <code>null</code> if
+   *         there is none
+   */
+  public Route findRoute(final String file) {
+    Route route = this.fileRoutes.get(file);
+    if (route == null) {
+      final int current = this.generation.get();
+      route = lookupRoute(file);
+      if (this.fileRoutes.size() >= MAX_CACHED_ROUTES) {
+        this.fileRoutes.clear();
+      }
+      // Do not cache a route computed before resources changed
+      if (current == this.generation.get()) {
+        this.fileRoutes.put(file, route);
+      }
+    }
+    return route == NO_ROUTE ? null : route;
+  }
+
+  private Route lookupRoute(final String file) {
+    for (final Environment env : this.environments) {
+      final SmallerResourceHandler resourceHandler = this.resourceHandlers
+          .get(env);
+      if (resourceHandler != null
+          && (resourceHandler.hasFile(resourceHandler.getTemplateEngine()
+              .getTemplateUri(file)) || resourceHandler.hasFile(file
+              + ".cfg.json"))) {
+        return new Route(env);
+      }
+    }
+    return NO_ROUTE;
+  }
+
+  /**
+   * @see de.matrixweb.smaller.dev.server.SmallerResourceHandler.ResourceListener#resourcesChanged(de.matrixweb.smaller.dev.server.SmallerResourceHandler,
+   *      java.util.Collection)
+   */
+  @Override
+  public void resourcesChanged(final SmallerResourceHandler handler,
+      final Collection<String> changedResources) {
+    this.generation.incrementAndGet();
+    this.fileRoutes.clear();
+  }
+
+  /** */
+  public static class Route {
+
+    private final Environment env;
+
+    Route(final Environment env) {
+      this.env = env;
+    }
+
+    /**
+     * @return the environment
+     */
+    public Environment getEnvironment() {
+      return this.env;
+    }
+
+  }
+
+  private static class ProcessPattern {
+
+    private final Pattern pattern;
+
+    private final Environment env;
+
+    ProcessPattern(final Pattern pattern, final Environment env) {
+      this.pattern = pattern;
+      this.env = env;
+    }
+
+  }
+
+}
@@ -0,0 +1,189 @@
+package de.matrixweb.smaller.dev.server;
+
+/**
+ * Runtime options of the dev-server which are not part of the smaller
+ * {@link de.matrixweb.smaller.config.DevServer} configuration.
+ *
+ * @author markusw
+ */
+public class ServerOptions {
+
+  private boolean streaming = false;
+
+  private boolean asyncProxy = false;
+
+  private long watchQuietPeriod = 100;
+
+  private long watchMaxWait = 1000;
+
+  private boolean incrementalBuild = false;
+
+  private long waitForBuild = 0;
+
+  private boolean buildCache = false;
+
+  private boolean lazy = false;
+
+  private boolean watchPolling = false;
+
+  private boolean cssInject = false;
+
+  /**
+   * @return True if responses should be written directly to the client
+   *         instead of being buffered
+   */
+  public boolean isStreaming() {
+    return this.streaming;
+  }
+
+  /**
+   * @param streaming
+   *          the streaming to set
+   */
+  public void setStreaming(final boolean streaming) {
+    this.streaming = streaming;
+  }
+
+  /**
+   * @return True if proxy requests should be suspended while waiting for the
+   *         backend
+   */
+  public boolean isAsyncProxy() {
+    return this.asyncProxy;
+  }
+
+  /**
+   * @param asyncProxy
+   *          the asyncProxy to set
+   */
+  public void setAsyncProxy(final boolean asyncProxy) {
+    this.asyncProxy = asyncProxy;
+  }
+
+  /**
+   * @return The time in milliseconds without further file changes after which
+   *         collected changes are processed
+   */
+  public long getWatchQuietPeriod() {
+    return this.watchQuietPeriod;
+  }
+
+  /**
+   * @param watchQuietPeriod
+   *          the watchQuietPeriod to set
+   */
+  public void setWatchQuietPeriod(final long watchQuietPeriod) {
+    this.watchQuietPeriod = watchQuietPeriod;
+  }
+
+  /**
+   * @return The maximum time in milliseconds changes are collected before they
+   *         are processed
+   */
+  public long getWatchMaxWait() {
+    return this.watchMaxWait;
+  }
+
+  /**
+   * @param watchMaxWait
+   *          the watchMaxWait to set
+   */
+  public void setWatchMaxWait(final long watchMaxWait) {
+    this.watchMaxWait = watchMaxWait;
+  }
+
+  /**
+   * @return True if only outputs which could be affected by changed resources
+   *         should be rebuilt
+   */
+  public boolean isIncrementalBuild() {
+    return this.incrementalBuild;
+  }
+
+  /**
+   * @param incrementalBuild
+   *          the incrementalBuild to set
+   */
+  public void setIncrementalBuild(final boolean incrementalBuild) {
+    this.incrementalBuild = incrementalBuild;
+  }
+
+  /**
+   * @return The maximum time in milliseconds a request waits for a pending
+   *         build; zero to always serve the last build output
+   */
+  public long getWaitForBuild() {
+    return this.waitForBuild;
+  }
+
+  /**
+   * @param waitForBuild
+   *          the waitForBuild to set
+   */
+  public void setWaitForBuild(final long waitForBuild) {
+    this.waitForBuild = waitForBuild;
+  }
+
+  /**
+   * @return True if build outputs should be persisted to restore them on
+   *         restart
+   */
+  public boolean isBuildCache() {
+    return this.buildCache;
+  }
+
+  /**
+   * @param buildCache
+   *          the buildCache to set
+   */
+  public void setBuildCache(final boolean buildCache) {
+    this.buildCache = buildCache;
+  }
+
+  /**
+   * @return True if the server should start before the initial builds are
+   *         completed
+   */
+  public boolean isLazy() {
+    return this.lazy;
+  }
+
+  /**
+   * @param lazy
+   *          the lazy to set
+   */
+  public void setLazy(final boolean lazy) {
+    this.lazy = lazy;
+  }
+
+  /**
+   * @return True if the resource folders should be polled for changes instead of using native file events
+   */
+  public boolean isWatchPolling() {
+    return this.watchPolling;
+  }
+
+  /**
+   * @param watchPolling
+   *          the watchPolling to set
+   */
+  public void setWatchPolling(final boolean watchPolling) {
+    this.watchPolling = watchPolling;
+  }
+
+  /**
+   * @return True if changed stylesheets should be sent to the live-reload clients
+   */
+  public boolean isCssInject() {
+    return this.cssInject;
+  }
+
+  /**
+   * @param cssInject
+   *          the cssInject to set
+   */
+  public void setCssInject(final boolean cssInject) {
+    this.cssInject = cssInject;
+  }
+
+}
@@ -17,6 +17,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 
+import javax.servlet.AsyncContext;
 import javax.servlet.ServletException;
 import javax.servlet.ServletOutputStream;
 import javax.servlet.http.HttpServletRequest;
@@ -59,34 +60,52 @@ public class Servlet extends WebSocketServlet {
 
   private final HttpClient client;
 
+  private AsyncHttpClient asyncClient;
+
   private final ConfigFile configFile;
 
+  private final ServerOptions options;
+
   private final Map<Environment, SmallerResourceHandler> resourceHandlers;
 
+  private final Router router;
+
   private String liveReloadClient = null;
 
   private VFS staticVfs;
 
+  private StaticFiles staticFiles;
+
   /**
    * @param configFile
+   * @param options
    * @param resourceHandlers
    * @throws IOException
    */
-  public Servlet(final ConfigFile configFile, final Map<Environment, SmallerResourceHandler> resourceHandlers)
-      throws IOException {
+  public Servlet(final ConfigFile configFile, final ServerOptions options,
+      final Map<Environment, SmallerResourceHandler> resourceHandlers) throws IOException {
     this.configFile = configFile;
+    this.options = options;
     this.resourceHandlers = resourceHandlers;
+    this.router = new Router(configFile, resourceHandlers);
     this.client = new HttpClient(new HttpHost(configFile.getDevServer().getProxyhost(), configFile.getDevServer()
         .getProxyport()), configFile.getDevServer().getPort());
+    if (options.isAsyncProxy()) {
+      this.asyncClient = new AsyncHttpClient(new HttpHost(configFile.getDevServer().getProxyhost(), configFile
+          .getDevServer().getProxyport()), configFile.getDevServer().getPort());
+    }
     LiveReloadSocket.start();
 
     if (configFile.getDevServer().getStaticFiles() != null) {
       final List<WrappedSystem> folders = new ArrayList<>();
+      final List<File> files = new ArrayList<>();
       for (final String folder : configFile.getDevServer().getStaticFiles().getFolder()) {
         folders.add(new JavaFile(new File(folder)));
+        files.add(new File(folder));
       }
       this.staticVfs = new VFS();
       this.staticVfs.mount(this.staticVfs.find("/"), new MergingVFS(folders));
+      this.staticFiles = new StaticFiles(files);
     }
   }
 
@@ -124,51 +143,144 @@ public class Servlet extends WebSocketServlet {
 
   private void handleHttpRequest(final HttpServletRequest request, final HttpServletResponse response)
       throws IOException {
+    final String uri = request.getRequestURI();
+    if (trySendStaticFile(uri, request, response)) {
+      return;
+    }
+    if (this.asyncClient != null && request.isAsyncSupported() && isProxyRequest(uri)) {
+      handleAsyncProxyRequest(request, response, uri);
+    } else {
+      writeResponse(response, new ResponseWriter() {
+        @Override
+        public void write(final OutputStream out) throws Exception {
+          dispatchRequest(out, request, response, uri);
+        }
+      });
+    }
+  }
+
+  private void writeResponse(final HttpServletResponse response, final ResponseWriter writer) throws IOException {
+    if (this.options.isStreaming()) {
+      writeStreamingResponse(response, writer);
+    } else {
+      writeBufferedResponse(response, writer);
+    }
+  }
+
+  private void writeBufferedResponse(final HttpServletResponse response, final ResponseWriter writer)
+      throws IOException {
     final ByteArrayOutputStream baos = new ByteArrayOutputStream();
     try {
-      final String uri = request.getRequestURI();
-      LOGGER.debug("Requested uri: {}", uri);
-      final boolean deliveredStaticFile = tryStaticFile(uri, baos);
-      if (!deliveredStaticFile) {
-        final Environment env = findEnvironmentByUri(uri);
-        if (env != null) {
-          this.resourceHandlers.get(env).process(baos, response, env.getProcess());
-        } else {
-          try {
-            handleProxyRequest(baos, request, response, uri);
-          } catch (final ConnectException | PageNotFoundException e) {
-            tryTemplateRendering(baos, request, response, uri);
-          } catch (final IOException e) {
-            LOGGER.warn("Unable to proxy request", e);
-            tryTemplateRendering(baos, request, response, uri);
-          }
-        }
-      }
+      writer.write(baos);
     } catch (final Exception e) {
       LOGGER.error("Failed to handle request", e);
-      response.setContentType("text/html");
-      final PrintWriter writer = new PrintWriter(baos);
-      writer.write("<html><body><pre>");
-      e.printStackTrace(writer);
-      writer.write("</pre></body></html>");
-      writer.flush();
+      writeErrorPage(baos, response, e);
     }
     try (ServletOutputStream out = response.getOutputStream()) {
       out.write(baos.toByteArray());
     }
   }
 
-  private boolean tryStaticFile(final String uri, final ByteArrayOutputStream baos) throws IOException {
+  private void writeStreamingResponse(final HttpServletResponse response, final ResponseWriter writer)
+      throws IOException {
+    final ServletOutputStream out = response.getOutputStream();
+    try {
+      writer.write(out);
+    } catch (final Exception e) {
+      if (response.isCommitted()) {
+        // There is no way to tell the client about the failure, so just
+        // abort the response instead of pretending it is complete
+        LOGGER.error("Failed to handle request after response was committed", e);
+        throw new IOException("Aborted committed response", e);
+      }
+      LOGGER.error("Failed to handle request", e);
+      response.reset();
+      writeErrorPage(out, response, e);
+    }
+    out.close();
+  }
+
+  private void dispatchRequest(final OutputStream out, final HttpServletRequest request,
+      final HttpServletResponse response, final String uri) throws Exception {
+    LOGGER.debug("Requested uri: {}", uri);
+    final boolean deliveredStaticFile = tryStaticFile(uri, request, response, out);
+    if (!deliveredStaticFile) {
+      final Environment env = findEnvironmentByUri(uri);
+      if (env != null) {
+        this.resourceHandlers.get(env).process(out, request, response, uri);
+      } else {
+        try {
+          handleProxyRequest(out, request, response, uri);
+        } catch (final ConnectException | PageNotFoundException e) {
+          tryTemplateRendering(out, request, response, uri);
+        } catch (final IOException e) {
+          LOGGER.warn("Unable to proxy request", e);
+          if (response.isCommitted()) {
+            throw e;
+          }
+          tryTemplateRendering(out, request, response, uri);
+        }
+      }
+    }
+  }
+
+  private void writeErrorPage(final OutputStream out, final HttpServletResponse response, final Exception e) {
+    response.setContentType("text/html");
+    final PrintWriter writer = new PrintWriter(out);
+    writer.write("<html><body><pre>");
+    e.printStackTrace(writer);
+    writer.write("</pre></body></html>");
+    writer.flush();
+  }
+
+  private boolean isProxyRequest(final String uri) throws IOException {
+    return findStaticFile(uri) == null && findEnvironmentByUri(uri) == null;
+  }
+
+  private VFile findStaticFile(final String uri) throws IOException {
     if (this.staticVfs != null) {
       final VFile file = this.staticVfs.find(uri);
       if (file.exists() && !file.isDirectory()) {
-        final InputStream in = file.getInputStream();
-        try {
-          IOUtils.copy(in, baos);
-          return true;
-        } finally {
-          in.close();
+        return file;
+      }
+    }
+    return null;
+  }
+
+  private boolean trySendStaticFile(final String uri, final HttpServletRequest request,
+      final HttpServletResponse response) throws IOException {
+    if (this.staticFiles != null) {
+      final File file = this.staticFiles.find(uri);
+      if (file != null) {
+        final long lastModified = file.lastModified();
+        if (!ConditionalGet.isNotModified(request, response, ConditionalGet.createETag(lastModified, file.length()),
+            lastModified)) {
+          LOGGER.debug("Send static file: {}", file);
+          this.staticFiles.send(file, getServletContext().getMimeType(uri), response);
         }
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private boolean tryStaticFile(final String uri, final HttpServletRequest request,
+      final HttpServletResponse response, final OutputStream out) throws IOException {
+    final VFile file = findStaticFile(uri);
+    if (file != null) {
+      if (ConditionalGet.isNotModified(request, response, null, file.getLastModified())) {
+        return true;
+      }
+      final String contentType = getServletContext().getMimeType(uri);
+      if (contentType != null) {
+        response.setContentType(contentType);
+      }
+      final InputStream in = file.getInputStream();
+      try {
+        IOUtils.copy(in, out);
+        return true;
+      } finally {
+        in.close();
       }
     }
     return false;
@@ -179,7 +291,12 @@ public class Servlet extends WebSocketServlet {
     try {
       final Environment env = findEnvironmentByFile(uri);
       if (env != null) {
-        this.resourceHandlers.get(env).renderTemplate(out, request, response, uri, getLiveReloadClient());
+        final ByteArrayOutputStream capture = new ByteArrayOutputStream();
+        this.resourceHandlers.get(env).renderTemplate(capture, request, response, uri, getLiveReloadClient());
+        final byte[] content = capture.toByteArray();
+        if (!ConditionalGet.isNotModified(request, response, ConditionalGet.createETag(content), -1)) {
+          out.write(content);
+        }
       }
     } catch (final IOException e) {
       LOGGER.error("Failed to render template", e);
@@ -189,6 +306,80 @@ public class Servlet extends WebSocketServlet {
 
   private void handleProxyRequest(final OutputStream out, final HttpServletRequest request,
       final HttpServletResponse response, final String uri) throws IOException {
+    this.client.request(createProxyRequest(request, uri), new HttpClient.ResponseHandler() {
+      @Override
+      public void handle(final StatusLine statusLine, final Header[] headers, final HttpEntity entity,
+          final ContentType contentType, final Charset charset) throws IOException {
+        handleResponse(out, statusLine, response, headers, entity, contentType, request, uri);
+      }
+    });
+  }
+
+  private void handleAsyncProxyRequest(final HttpServletRequest request, final HttpServletResponse response,
+      final String uri) throws IOException {
+    final HttpRequest clientRequest = createProxyRequest(request, uri);
+    final AsyncContext asyncContext = request.startAsync();
+    // The backend request is bounded by the http client timeout
+    asyncContext.setTimeout(0);
+    final AsyncHttpClient.ResponseHandler responseHandler = new AsyncHttpClient.ResponseHandler() {
+      @Override
+      public void handle(final StatusLine statusLine, final Header[] headers, final HttpEntity entity,
+          final ContentType contentType, final Charset charset) {
+        resumeProxyRequest(asyncContext, response, new ResponseWriter() {
+          @Override
+          public void write(final OutputStream out) throws Exception {
+            try {
+              handleResponse(out, statusLine, response, headers, entity, contentType, request, uri);
+            } catch (final PageNotFoundException e) {
+              tryTemplateRendering(out, request, response, uri);
+            } catch (final IOException e) {
+              LOGGER.warn("Unable to proxy request", e);
+              if (response.isCommitted()) {
+                throw e;
+              }
+              tryTemplateRendering(out, request, response, uri);
+            }
+          }
+        });
+      }
+
+      @Override
+      public void failed(final Throwable cause) {
+        resumeProxyRequest(asyncContext, response, new ResponseWriter() {
+          @Override
+          public void write(final OutputStream out) throws Exception {
+            if (!(cause instanceof ConnectException)) {
+              LOGGER.warn("Unable to proxy request", cause);
+            }
+            tryTemplateRendering(out, request, response, uri);
+          }
+        });
+      }
+    };
+    try {
+      this.asyncClient.request(clientRequest, responseHandler);
+    } catch (final IOException e) {
+      responseHandler.failed(e);
+    }
+  }
+
+  private void resumeProxyRequest(final AsyncContext asyncContext, final HttpServletResponse response,
+      final ResponseWriter writer) {
+    asyncContext.start(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          writeResponse(response, writer);
+        } catch (final IOException e) {
+          LOGGER.error("Failed to complete proxy request", e);
+        } finally {
+          asyncContext.complete();
+        }
+      }
+    });
+  }
+
+  private HttpRequest createProxyRequest(final HttpServletRequest request, final String uri) throws IOException {
     HttpRequest clientRequest = null;
 
     final Environment env = findEnvironmentByFile(uri);
@@ -203,13 +394,7 @@ public class Servlet extends WebSocketServlet {
       clientRequest = createClientRequest(request,
           uri + (request.getQueryString() != null ? "?" + request.getQueryString() : ""));
     }
-    this.client.request(clientRequest, new HttpClient.ResponseHandler() {
-      @Override
-      public void handle(final StatusLine statusLine, final Header[] headers, final HttpEntity entity,
-          final ContentType contentType, final Charset charset) throws IOException {
-        handleResponse(out, statusLine, response, headers, entity, contentType, request, uri);
-      }
-    });
+    return clientRequest;
   }
 
   private HttpRequest createClientRequest(final HttpServletRequest request, final String path) throws IOException {
@@ -317,24 +502,12 @@ public class Servlet extends WebSocketServlet {
   }
 
   private Environment findEnvironmentByUri(final String uri) {
-    for (final String envName : this.configFile.getDevServer().getEnvironments()) {
-      final Environment env = this.configFile.getEnvironments().get(envName);
-      if (env.getProcess() != null && uri.matches(env.getProcess())) {
-        return env;
-      }
-    }
-    return null;
+    return this.router.findEnvironmentByUri(uri);
   }
 
   private Environment findEnvironmentByFile(final String file) {
-    for (final Entry<Environment, SmallerResourceHandler> entry : this.resourceHandlers.entrySet()) {
-      final SmallerResourceHandler resourceHandler = entry.getValue();
-      if (resourceHandler.hasFile(resourceHandler.getTemplateEngine().getTemplateUri(file))
-          || resourceHandler.hasFile(file + ".cfg.json")) {
-        return entry.getKey();
-      }
-    }
-    return null;
+    final Router.Route route = this.router.findRoute(file);
+    return route != null ? route.getEnvironment() : null;
   }
 
   /**
@@ -366,13 +539,27 @@ public class Servlet extends WebSocketServlet {
       this.staticVfs.dispose();
       this.staticVfs = null;
     }
+    if (this.staticFiles != null) {
+      this.staticFiles.dispose();
+      this.staticFiles = null;
+    }
     if (this.client != null) {
       this.client.dispose();
     }
+    if (this.asyncClient != null) {
+      this.asyncClient.dispose();
+      this.asyncClient = null;
+    }
     LiveReloadSocket.stop();
     super.destroy();
   }
 
+  private static interface ResponseWriter {
+
+    void write(OutputStream out) throws Exception;
+
+  }
+
   static class PageNotFoundException extends RuntimeException {
 
     private static final long serialVersionUID = -6875816786862210687L;
@@ -6,12 +6,24 @@ import java.io.OutputStream;
 import java.io.PrintWriter;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
@@ -22,24 +34,21 @@ import org.slf4j.LoggerFactory;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.common.base.Joiner;
+import com.google.common.hash.HashCode;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
 import de.matrixweb.smaller.common.Manifest;
 import de.matrixweb.smaller.common.ProcessDescription;
 import de.matrixweb.smaller.common.SmallerException;
-import de.matrixweb.smaller.common.Version;
 import de.matrixweb.smaller.config.DevServer;
 import de.matrixweb.smaller.config.Environment;
 import de.matrixweb.smaller.dev.server.templates.Engine;
 import de.matrixweb.smaller.dev.server.templates.TemplateEngine;
 import de.matrixweb.smaller.dev.server.tests.TestFramework;
 import de.matrixweb.smaller.dev.server.tests.TestRunner;
-import de.matrixweb.smaller.pipeline.Pipeline;
-import de.matrixweb.smaller.resource.ProcessorFactory;
 import de.matrixweb.smaller.resource.ResourceResolver;
 import de.matrixweb.smaller.resource.VFSResourceResolver;
-import de.matrixweb.smaller.resource.impl.JavaEEProcessorFactory;
 import de.matrixweb.vfs.VFS;
-import de.matrixweb.vfs.VFSUtils;
 import de.matrixweb.vfs.VFile;
 import de.matrixweb.vfs.scanner.ResourceScanner;
 import de.matrixweb.vfs.scanner.VFSResourceLister;
@@ -57,7 +66,7 @@ public class SmallerResourceHandler {
 
   private DevServer devServer;
 
-  private ProcessorFactory processorFactory;
+  private final ServerOptions options;
 
   private final VFS vfs;
 
@@ -65,9 +74,11 @@ public class SmallerResourceHandler {
 
   private final Manifest manifest;
 
-  private ProcessDescription processDescription;
+  private final Map<String, ProcessTask> tasks = new LinkedHashMap<>();
 
-  private Pipeline pipeline;
+  private final Map<ProcessTask, VFS> isolatedVfs = new HashMap<>();
+
+  private ExecutorService buildExecutor;
 
   private final ResourceWatchdog resourceWatchdog;
 
@@ -77,33 +88,76 @@ public class SmallerResourceHandler {
 
   private final Map<String, Map<String, Object>> configCache = new HashMap<>();
 
-  private ResourceScanner resourceScanner;
+  private ResourceMatcher resourceMatcher;
+
+  private volatile ResourceIndex resourceIndex;
+
+  private volatile ContentHashes contentHashes;
+
+  private final CountDownLatch indexed = new CountDownLatch(1);
+
+  private BuildCache buildCache;
+
+  private final BuildState buildState = new BuildState();
+
+  private final ExecutorService buildRunner = Executors
+      .newSingleThreadExecutor(new ThreadFactoryBuilder()
+          .setNameFormat("smaller-rebuild-%d").setDaemon(true).build());
+
+  private final List<ResourceListener> resourceListeners = new CopyOnWriteArrayList<>();
 
   /**
    * @param devServer
    * @param env
    * @param manifest
+   * @param options
+   * @param resourceWatchdog
+   *          The watchdog reporting the changes of the environment's files
    * @throws IOException
    */
   public SmallerResourceHandler(final DevServer devServer,
-      final Environment env, final Manifest manifest) throws IOException {
+      final Environment env, final Manifest manifest,
+      final ServerOptions options, final ResourceWatchdog resourceWatchdog)
+      throws IOException {
     try {
       this.devServer = devServer;
       this.manifest = manifest;
+      this.options = options;
       this.vfs = new VFS();
-      this.resourceWatchdog = new ResourceWatchdog(this, env);
+      this.resourceWatchdog = resourceWatchdog;
       prepareVfs(env);
       if (env.getProcess() != null) {
-        this.processorFactory = new JavaEEProcessorFactory();
         this.resolver = new VFSResourceResolver(this.vfs);
-        this.pipeline = new Pipeline(this.processorFactory);
+        if (options.isBuildCache()) {
+          this.buildCache = new BuildCache(BuildCache.getDefaultDirectory());
+        }
         setupTasks(env, manifest);
+        isolateIndependentTasks(env);
       }
       this.templateEngine = Engine.get(env.getTemplateEngine())
           .create(this.vfs);
       this.testRunner = TestFramework.get(env.getTestFramework()).create();
 
+      resourceWatchdog.subscribe(this, env, this.resourceMatcher);
+      if (options.isLazy()) {
+        // Indexed by the build thread right before the first build
+        this.buildRunner.execute(new Runnable() {
+          @Override
+          public void run() {
+            try {
+              indexResources(env);
+            } catch (final RuntimeException e) {
+              LOGGER.error("Failed to index resources", e);
+            }
+          }
+        });
+      } else {
+        indexResources(env);
+      }
       smallerResources(null);
+      if (!options.isLazy()) {
+        awaitPendingBuild(0);
+      }
     } catch (IOException | RuntimeException e) {
       dispose();
       throw e;
@@ -113,50 +167,191 @@ public class SmallerResourceHandler {
   private void setupTasks(final Environment env, final Manifest manifest) {
     for (final ProcessDescription processDescription : manifest
         .getProcessDescriptions()) {
-      if (processDescription.getOutputFile() != null
-          && processDescription.getOutputFile().equals(env.getProcess())) {
-        this.processDescription = processDescription;
+      final String out = processDescription.getOutputFile();
+      if (out != null
+          && (out.equals(env.getProcess()) || out.matches(env.getProcess()))) {
+        this.tasks.put(out, new ProcessTask(processDescription));
       }
     }
   }
 
-  private final void prepareVfs(final Environment env) throws IOException {
+  /**
+   * Tasks neither reading the output of another task nor producing an input
+   * of one get their own vfs, so they could be executed concurrently to the
+   * other tasks. Their outputs are published but not in the shared vfs.
+   */
+  private void isolateIndependentTasks(final Environment env)
+      throws IOException {
+    final List<ProcessTask> independent = new ArrayList<>();
+    for (final ProcessTask task : this.tasks.values()) {
+      if (!isInputOfAny(task.getOutputFile(), this.tasks.values())
+          && !isOutputOfAny(task.getInputFile(), this.tasks.values())) {
+        independent.add(task);
+      }
+    }
+    if (independent.size() < 2) {
+      return;
+    }
+    for (final ProcessTask task : independent) {
+      final VFS taskVfs = new VFS();
+      this.isolatedVfs.put(task, taskVfs);
+      mountRoots(taskVfs, env);
+    }
+    this.buildExecutor = Executors.newFixedThreadPool(
+        Math.min(independent.size(), Runtime.getRuntime()
+            .availableProcessors()), new ThreadFactoryBuilder()
+            .setNameFormat("smaller-build-%d").setDaemon(true).build());
+  }
+
+  private void mountRoots(final VFS target, final Environment env)
+      throws IOException {
     final List<WrappedSystem> mergedRoot = new ArrayList<>();
     for (final String root : env.getFiles().getFolder()) {
-      LOGGER.debug("Added document-root: {}", root);
       mergedRoot.add(new JavaFile(new File(root)));
     }
-    this.vfs.mount(this.vfs.find("/"), new MergingVFS(mergedRoot));
+    target.mount(target.find("/"), new MergingVFS(mergedRoot));
+  }
+
+  private final void prepareVfs(final Environment env) throws IOException {
+    for (final String root : env.getFiles().getFolder()) {
+      LOGGER.debug("Added document-root: {}", root);
+    }
+    mountRoots(this.vfs, env);
 
-    this.resourceScanner = new ResourceScanner(new VFSResourceLister(this.vfs),
-        env.getFiles().getIncludes(), env.getFiles().getExcludes());
+    final List<String> includes = new ArrayList<>();
+    if (env.getFiles().getIncludes() != null) {
+      for (final String include : env.getFiles().getIncludes()) {
+        includes.add(include);
+      }
+    }
+    final List<String> excludes = new ArrayList<>();
+    if (env.getFiles().getExcludes() != null) {
+      for (final String exclude : env.getFiles().getExcludes()) {
+        excludes.add(exclude);
+      }
+    }
+    this.resourceMatcher = new ResourceMatcher(includes, excludes);
   }
 
-  void smallerResources(final List<String> changedResources) {
-    if (changedResources != null) {
-      changedResources.retainAll(this.resourceScanner.getResources());
+  /**
+   * Scans and hashes all resources of the environment.
+   */
+  private void indexResources(final Environment env) {
+    try {
+      final List<File> folders = new ArrayList<>();
+      for (final String root : env.getFiles().getFolder()) {
+        folders.add(new File(root));
+      }
+      final Collection<String> resources = new ResourceScanner(
+          new VFSResourceLister(this.vfs), env.getFiles().getIncludes(), env
+              .getFiles().getExcludes()).getResources();
+      this.resourceIndex = new ResourceIndex(this.resourceMatcher, resources);
+      this.contentHashes = new ContentHashes(new DocumentRoots(folders),
+          resources);
+    } finally {
+      this.indexed.countDown();
     }
-    if (changedResources == null || !changedResources.isEmpty()) {
-      LOGGER.info("Changed resources: {}", changedResources);
+  }
 
-      final PushInfo pushInfo = new PushInfo();
-      @SuppressWarnings("unchecked")
-      List<String> remaining = changedResources != null ? new ArrayList<>(
-          changedResources) : Collections.EMPTY_LIST;
-      if (remaining.size() > 0) {
-        remaining = cleanupConfigCache(changedResources, pushInfo);
+  /**
+   * @return Returns the resource index; waits until the resources are indexed
+   *         (lazy startup)
+   */
+  private ResourceIndex awaitResourceIndex() throws InterruptedException {
+    this.indexed.await();
+    return this.resourceIndex;
+  }
+
+  /**
+   * Announces changes which are not yet processed, so requests could wait for
+   * the next build.
+   */
+  void changesPending() {
+    this.buildState.announce();
+  }
+
+  /**
+   * Schedules a build for the given changes. A running build is cancelled and
+   * restarted together with the new changes.
+   *
+   * @param changes
+   *          The changes or <code>null</code> for a full build
+   */
+  void smallerResources(final ChangeSet changes) {
+    List<String> changedResources = null;
+    if (changes != null && this.contentHashes == null) {
+      // Not indexed yet (lazy startup), the index will include the changes
+      LOGGER.debug("Changes before the resources were indexed");
+    } else if (changes != null) {
+      // Skip events which did not change the content (e.g. touch)
+      changedResources = this.contentHashes.update(this.resourceIndex
+          .update(changes));
+      if (changedResources.isEmpty()) {
+        // Nothing to build, a running build stays valid
+        this.buildState.withdraw();
+        return;
       }
-      if (remaining.size() > 0) {
-        remaining = recompileTemplates(remaining, pushInfo);
+      LOGGER.info("Changed resources: {}", changedResources);
+      for (final ResourceListener listener : this.resourceListeners) {
+        listener.resourcesChanged(this, changedResources);
       }
-      if (changedResources == null || remaining.size() > 0) {
-        recompileTask(changedResources, pushInfo);
+    }
+    if (this.buildState.request(changedResources)) {
+      this.buildRunner.execute(new Runnable() {
+        @Override
+        public void run() {
+          runBuilds();
+        }
+      });
+    }
+  }
+
+  private void runBuilds() {
+    PushInfo pushInfo = new PushInfo();
+    boolean fullBuild = false;
+    boolean changed = false;
+    // Resources of cancelled builds are carried over to the next one
+    final Set<String> taskResources = new LinkedHashSet<>();
+    BuildState.Build build;
+    while ((build = this.buildState.start()) != null) {
+      final List<String> changedResources = build.getChangedResources();
+      boolean completed = true;
+      try {
+        if (changedResources == null) {
+          fullBuild = true;
+          changed = true;
+        } else if (!changedResources.isEmpty()) {
+          changed = true;
+          List<String> remaining = cleanupConfigCache(changedResources,
+              pushInfo);
+          if (remaining.size() > 0) {
+            remaining = recompileTemplates(remaining, pushInfo);
+          }
+          taskResources.addAll(remaining);
+        }
+        if (fullBuild || !taskResources.isEmpty()) {
+          completed = recompileTask(fullBuild ? null : new ArrayList<>(
+              taskResources), pushInfo, build);
+        }
+        if (completed && changed && pushInfo.hasChanges()) {
+          LOGGER.debug(
+              "PushInfo: {}, {}, {}",
+              new Object[] { pushInfo.isFullReload(), pushInfo.getJs(),
+                  pushInfo.getCss() });
+          broadcast(pushInfo);
+        }
+      } catch (final RuntimeException e) {
+        LOGGER.error("Failed to build resources", e);
+      }
+      this.buildState.finish(build, completed);
+      if (completed) {
+        pushInfo = new PushInfo();
+        fullBuild = false;
+        changed = false;
+        taskResources.clear();
+      } else {
+        LOGGER.info("Build {} superseded by new changes", build.getNumber());
       }
-      LOGGER.debug(
-          "PushInfo: {}, {}, {}",
-          new Object[] { pushInfo.isFullReload(), pushInfo.getJs(),
-              pushInfo.getCss() });
-      LiveReloadSocket.broadcastReload(pushInfo);
     }
   }
 
@@ -183,6 +378,10 @@ public class SmallerResourceHandler {
     final Iterator<String> it = remaining.iterator();
     while (it.hasNext()) {
       final String path = it.next();
+      if (!this.resourceIndex.contains(path)) {
+        // Deleted resources could not be compiled
+        continue;
+      }
       try {
         if (this.templateEngine.compile(path)) {
           pushInfo.setFullReload(true);
@@ -196,61 +395,353 @@ public class SmallerResourceHandler {
     return remaining;
   }
 
-  private void recompileTask(final List<String> changedResources,
-      final PushInfo pushInfo) {
-    if (this.processDescription != null) {
+  /**
+   * @return Returns false if the build was cancelled
+   */
+  private boolean recompileTask(final List<String> changedResources,
+      final PushInfo pushInfo, final BuildState.Build build) {
+    Collection<ProcessTask> affected = findAffectedTasks(changedResources);
+    final Map<ProcessTask, String> cacheKeys = new HashMap<>();
+    if (this.buildCache != null) {
+      affected = restoreFromCache(affected, cacheKeys, pushInfo,
+          build.getNumber());
+    }
+    final List<ProcessTask> ordered = orderByDependencies(affected);
+    final Map<ProcessTask, Future<Boolean>> running = executeIsolated(
+        ordered, build, cacheKeys);
+    // The remaining pipelines read from and write to the shared vfs, so they
+    // are executed one after another
+    for (final ProcessTask task : ordered) {
+      if (running.containsKey(task)) {
+        continue;
+      }
+      if (this.buildState.isCancelled()) {
+        break;
+      }
+      try {
+        if (executeTask(task, build, cacheKeys.get(task))) {
+          addChangedOutput(task.getOutputFile(), pushInfo);
+        }
+      } catch (IOException | SmallerException e) {
+        addBuildFailure(e, pushInfo);
+      }
+    }
+    // Even a cancelled build has to wait, the next one could execute the
+    // same tasks on the same vfs
+    for (final Entry<ProcessTask, Future<Boolean>> entry : running.entrySet()) {
       try {
-        final long start = System.currentTimeMillis();
+        if (entry.getValue().get()) {
+          addChangedOutput(entry.getKey().getOutputFile(), pushInfo);
+        }
+      } catch (final ExecutionException e) {
+        addBuildFailure(e.getCause(), pushInfo);
+      } catch (final InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return false;
+      }
+    }
+    // The pipeline could not be interrupted, but a result superseded while
+    // it was running must not be pushed to the clients
+    return !this.buildState.isCancelled();
+  }
 
-        executeSmaller(changedResources, this.processDescription);
+  /**
+   * Submits the isolated tasks of the given ones to the build executor.
+   *
+   * @return Returns the results of the submitted tasks
+   */
+  private Map<ProcessTask, Future<Boolean>> executeIsolated(
+      final Collection<ProcessTask> tasks, final BuildState.Build build,
+      final Map<ProcessTask, String> cacheKeys) {
+    final Map<ProcessTask, Future<Boolean>> running = new LinkedHashMap<>();
+    if (this.buildExecutor != null) {
+      for (final ProcessTask task : tasks) {
+        if (this.isolatedVfs.containsKey(task)) {
+          running.put(task, this.buildExecutor.submit(new Callable<Boolean>() {
+            @Override
+            public Boolean call() throws IOException {
+              return executeTask(task, build, cacheKeys.get(task));
+            }
+          }));
+        }
+      }
+    }
+    return running;
+  }
 
-        final String out = this.processDescription.getOutputFile();
-        if (start < this.vfs.find(out).getLastModified()) {
-          if (out.endsWith(".js")) {
-            pushInfo.setJs(out);
-          } else if (out.endsWith(".css")) {
-            pushInfo.setCss(out);
+  private boolean executeTask(final ProcessTask task,
+      final BuildState.Build build, final String cacheKey) throws IOException {
+    final VFS taskVfs = this.isolatedVfs.get(task);
+    final boolean changed;
+    if (taskVfs != null) {
+      changed = task.execute(taskVfs, new VFSResourceResolver(taskVfs),
+          this.manifest, build.getNumber());
+    } else {
+      changed = task.execute(this.vfs, this.resolver, this.manifest,
+          build.getNumber());
+    }
+    // Sources changed during the build could be part of the output
+    if (cacheKey != null && !this.buildState.isSuperseded(build)) {
+      this.buildCache.store(cacheKey, task.getOutput().getContent(false));
+    }
+    return changed;
+  }
+
+  /**
+   * Restores the outputs of the given tasks from the build cache.
+   *
+   * @return Returns the tasks which have to be executed
+   */
+  private Collection<ProcessTask> restoreFromCache(
+      final Collection<ProcessTask> affected,
+      final Map<ProcessTask, String> cacheKeys, final PushInfo pushInfo,
+      final long build) {
+    final Map<String, HashCode> hashes = this.contentHashes.snapshot();
+    final Set<ProcessTask> pending = new HashSet<>();
+    for (final ProcessTask task : affected) {
+      // The input heuristic is only trusted if enabled by the user
+      Map<String, HashCode> inputs = hashes;
+      if (this.options.isIncrementalBuild()) {
+        inputs = new HashMap<>();
+        for (final Entry<String, HashCode> entry : hashes.entrySet()) {
+          if (task.isInput(entry.getKey())) {
+            inputs.put(entry.getKey(), entry.getValue());
           }
         }
-      } catch (IOException | SmallerException e) {
-        final StringBuilder sb = new StringBuilder();
-        for (final Throwable t : ExceptionUtils.getThrowables(e)) {
-          sb.append(": ").append(t.getMessage());
+      }
+      final String key = this.buildCache.createKey(
+          task.getProcessDescription(), inputs);
+      final byte[] content = key != null ? this.buildCache.load(key) : null;
+      if (content == null) {
+        pending.add(task);
+        if (key != null) {
+          cacheKeys.put(task, key);
+        }
+        continue;
+      }
+      try {
+        LOGGER.info("Restored '{}' from build cache", task.getOutputFile());
+        if (task.restore(content, build)) {
+          addChangedOutput(task.getOutputFile(), pushInfo);
         }
-        pushInfo.addMessage("Failed to compile resources: " + sb.substring(2));
-        LOGGER.error("Failed to process resources", e);
+      } catch (final IOException e) {
+        LOGGER.warn("Unable to restore '{}': {}", task.getOutputFile(),
+            e.getMessage());
+        pending.add(task);
+      }
+    }
+    // Restored outputs are not in the vfs, so tasks reading them need a build
+    boolean found = true;
+    while (found) {
+      found = false;
+      for (final ProcessTask task : this.tasks.values()) {
+        if (!pending.contains(task) && task.isRestored()
+            && isInputOfAny(task.getOutputFile(), pending)) {
+          pending.add(task);
+          found = true;
+        }
+      }
+    }
+    final List<ProcessTask> ordered = new ArrayList<>(pending.size());
+    for (final ProcessTask task : this.tasks.values()) {
+      if (pending.contains(task)) {
+        ordered.add(task);
       }
     }
+    return ordered;
   }
 
-  private void executeSmaller(final List<String> changedResources,
-      final ProcessDescription processDescription) throws IOException {
-    if (this.pipeline != null) {
-      this.pipeline.execute(Version.getCurrentVersion(), this.vfs,
-          this.resolver, this.manifest, processDescription);
+  private boolean isInputOfAny(final String file,
+      final Collection<ProcessTask> tasks) {
+    for (final ProcessTask task : tasks) {
+      if (file.equals(task.getInputFile())) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private boolean isOutputOfAny(final String file,
+      final Collection<ProcessTask> tasks) {
+    for (final ProcessTask task : tasks) {
+      if (task.getOutputFile().equals(file)) {
+        return true;
+      }
+    }
+    return false;
+  }
 
-      // TODO: Add test run
+  private Collection<ProcessTask> findAffectedTasks(
+      final List<String> changedResources) {
+    if (changedResources == null || !this.options.isIncrementalBuild()) {
+      return this.tasks.values();
+    }
+    // Outputs of rebuilt tasks could be inputs of other tasks
+    final List<String> changes = new ArrayList<>(changedResources);
+    final Set<ProcessTask> affected = new LinkedHashSet<>();
+    boolean found = true;
+    while (found) {
+      found = false;
+      for (final ProcessTask task : this.tasks.values()) {
+        if (!affected.contains(task) && task.isAffectedBy(changes)) {
+          affected.add(task);
+          changes.add(task.getOutputFile());
+          found = true;
+        }
+      }
     }
+    LOGGER.debug("Rebuilding {} of {} outputs", affected.size(),
+        this.tasks.size());
+    return affected;
+  }
+
+  /**
+   * Orders the given tasks so that tasks reading the output of another task
+   * are executed after it.
+   */
+  private List<ProcessTask> orderByDependencies(
+      final Collection<ProcessTask> tasks) {
+    final List<ProcessTask> ordered = new ArrayList<>(tasks.size());
+    final List<ProcessTask> pending = new ArrayList<>(tasks);
+    while (!pending.isEmpty()) {
+      final Set<String> outputs = new HashSet<>();
+      for (final ProcessTask task : pending) {
+        outputs.add(task.getOutputFile());
+      }
+      final List<ProcessTask> stage = new ArrayList<>();
+      for (final ProcessTask task : pending) {
+        if (!outputs.contains(task.getInputFile())) {
+          stage.add(task);
+        }
+      }
+      if (stage.isEmpty()) {
+        // Cyclic dependencies; build in configuration order
+        stage.addAll(pending);
+      }
+      pending.removeAll(stage);
+      ordered.addAll(stage);
+    }
+    return ordered;
+  }
+
+  private void broadcast(final PushInfo pushInfo) {
+    if (this.options.isCssInject() && pushInfo.isCssOnly()) {
+      final ProcessTask task = this.tasks.get(pushInfo.getCss());
+      final BuildOutput output = task != null ? task.getOutput() : null;
+      if (output != null) {
+        LiveReloadSocket.broadcastCss(pushInfo.getCss(), output);
+        return;
+      }
+    }
+    LiveReloadSocket.broadcastReload(pushInfo);
+  }
+
+  private void addChangedOutput(final String out, final PushInfo pushInfo) {
+    if (out.endsWith(".js")) {
+      if (pushInfo.getJs() != null) {
+        pushInfo.setFullReload(true);
+      }
+      pushInfo.setJs(out);
+    } else if (out.endsWith(".css")) {
+      if (pushInfo.getCss() != null) {
+        // The client could only refresh a single stylesheet
+        pushInfo.setFullReload(true);
+      }
+      pushInfo.setCss(out);
+    }
+  }
+
+  private void addBuildFailure(final Throwable e, final PushInfo pushInfo) {
+    final StringBuilder sb = new StringBuilder();
+    for (final Throwable t : ExceptionUtils.getThrowables(e)) {
+      sb.append(": ").append(t.getMessage());
+    }
+    pushInfo.addMessage("Failed to compile resources: " + sb.substring(2));
+    LOGGER.error("Failed to process resources", e);
   }
 
   /**
    * @param out
+   * @param request
    * @param response
    * @param uri
    * @throws IOException
    */
   public void process(final OutputStream out,
-      final HttpServletResponse response, final String uri) throws IOException {
+      final HttpServletRequest request, final HttpServletResponse response,
+      final String uri) throws IOException {
     LOGGER.info("Reply with smaller-resource at '{}'", uri);
     if (uri.endsWith("js")) {
       response.setContentType("application/javascript");
     } else if (uri.endsWith("css")) {
       response.setContentType("text/css");
     }
+    // Always revalidate, but allow the browser to reuse unchanged content
     response.addHeader("Pragma", "no-cache");
-    final PrintWriter writer = new PrintWriter(out);
-    writer.write(VFSUtils.readToString(this.vfs.find(uri)));
-    writer.flush();
+    response.addHeader("Cache-Control", "no-cache");
+    response.addHeader("Vary", "Accept-Encoding");
+
+    final ProcessTask task = this.tasks.get(uri);
+    if (task != null && task.getOutput() == null) {
+      // Not built yet (e.g. lazy startup), wait for this handler only
+      awaitPendingBuild(0);
+    } else if (task != null && this.options.getWaitForBuild() > 0) {
+      awaitPendingBuild(this.options.getWaitForBuild());
+    }
+    final BuildOutput output = task != null ? task.getOutput() : null;
+    if (output == null) {
+      throw new IOException("No smaller-resource built for '" + uri + "'");
+    }
+    LOGGER.debug("Serving version {} of '{}'", output.getVersion(), uri);
+    final boolean gzip = acceptsGzip(request);
+    if (ConditionalGet.isNotModified(request, response, output.getETag(gzip),
+        output.getLastModified())) {
+      return;
+    }
+    final byte[] content = output.getContent(gzip);
+    if (gzip) {
+      response.setHeader("Content-Encoding", "gzip");
+    }
+    response.setContentLength(content.length);
+    out.write(content);
+  }
+
+  /**
+   * Waits until the build pending at the time of the call is completed or the
+   * timeout elapsed. A timeout of zero waits without limit.
+   */
+  private void awaitPendingBuild(final long timeout) throws IOException {
+    try {
+      final long build = this.buildState.await(timeout);
+      if (build != 0) {
+        LOGGER.info("Build {} not completed within {}ms, serving last output",
+            build, timeout);
+      }
+    } catch (final InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while waiting for build", e);
+    }
+  }
+
+  private boolean acceptsGzip(final HttpServletRequest request) {
+    final String acceptEncoding = request.getHeader("Accept-Encoding");
+    if (acceptEncoding != null) {
+      for (final String coding : acceptEncoding.split(",")) {
+        final String[] parts = coding.trim().split(";", 2);
+        if ("gzip".equalsIgnoreCase(parts[0].trim())) {
+          return parts.length == 1
+              || !parts[1].replace(" ", "").matches("q=0(\\.0*)?");
+        }
+      }
+    }
+    return false;
+  }
+
+  /**
+   * @return Returns the uris of all outputs built by this handler
+   */
+  public Collection<String> getOutputFiles() {
+    return Collections.unmodifiableSet(this.tasks.keySet());
   }
 
   /**
@@ -259,7 +750,21 @@ public class SmallerResourceHandler {
    *         file set
    */
   public boolean hasFile(final String file) {
-    return this.resourceScanner.getResources().contains(file);
+    try {
+      final ResourceIndex index = awaitResourceIndex();
+      return index != null && index.contains(file);
+    } catch (final InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return false;
+    }
+  }
+
+  /**
+   * @param listener
+   *          The listener to notify about changed resources
+   */
+  public void addResourceListener(final ResourceListener listener) {
+    this.resourceListeners.add(listener);
   }
 
   /**
@@ -409,10 +914,17 @@ public class SmallerResourceHandler {
    */
   public void dispose() throws IOException {
     if (this.resourceWatchdog != null) {
-      this.resourceWatchdog.stop();
+      this.resourceWatchdog.unsubscribe(this);
     }
-    if (this.processorFactory != null) {
-      this.processorFactory.dispose();
+    this.buildRunner.shutdownNow();
+    if (this.buildExecutor != null) {
+      this.buildExecutor.shutdownNow();
+    }
+    for (final ProcessTask task : this.tasks.values()) {
+      task.dispose();
+    }
+    for (final VFS taskVfs : this.isolatedVfs.values()) {
+      taskVfs.dispose();
     }
     if (this.vfs != null) {
       this.vfs.dispose();
@@ -422,6 +934,20 @@ public class SmallerResourceHandler {
     }
   }
 
+  /** */
+  public static interface ResourceListener {
+
+    /**
+     * @param handler
+     *          The handler the resources belong to
+     * @param changedResources
+     *          The changed resource paths
+     */
+    void resourcesChanged(SmallerResourceHandler handler,
+        Collection<String> changedResources);
+
+  }
+
   /** */
   public class PushInfo {
 
@@ -458,6 +984,14 @@ public class SmallerResourceHandler {
       this.fullReload = fullReload;
     }
 
+    /**
+     * @return True if there is anything to tell the clients
+     */
+    public boolean hasChanges() {
+      return !this.messages.isEmpty() || this.fullReload || this.js != null
+          || this.css != null;
+    }
+
     /**
      * @return True if a full page reload is required
      */
@@ -467,6 +1001,14 @@ public class SmallerResourceHandler {
               && SmallerResourceHandler.this.devServer.isForceFullReload());
     }
 
+    /**
+     * @return True if only a single stylesheet changed
+     */
+    public boolean isCssOnly() {
+      return this.css != null && this.js == null && !isFullReload()
+          && this.messages.isEmpty();
+    }
+
     /**
      * @return the js
      */
@@ -0,0 +1,162 @@
+package de.matrixweb.smaller.dev.server;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletResponse;
+
+import org.eclipse.jetty.io.Buffer;
+import org.eclipse.jetty.io.View;
+import org.eclipse.jetty.io.nio.DirectNIOBuffer;
+import org.eclipse.jetty.server.HttpConnection;
+
+/**
+ * Delivers files from the static folders without copying them through the
+ * heap. Files are memory-mapped and the mapped buffer is handed to jetty,
+ * which writes it directly to the socket. Small files are kept mapped for
+ * further requests.
+ *
+ * @author markusw
+ */
+public class StaticFiles {
+
+  private static final long MAX_MAPPED_SIZE = 4 * 1024 * 1024;
+
+  /** The maximum size of all mapped files together */
+  private static final long MAX_MAPPED_TOTAL = 64 * 1024 * 1024;
+
+  private final DocumentRoots roots;
+
+  // In access order, the least recently used files are unmapped first
+  private final Map<File, MappedFile> mapped = new LinkedHashMap<>(16,
+      0.75f, true);
+
+  private long mappedTotal = 0;
+
+  /**
+   * @param folders
+   */
+  public StaticFiles(final List<File> folders) {
+    this.roots = new DocumentRoots(folders);
+  }
+
+  /**
+   * @param uri
+   * @return Returns the file for the given uri or <code>null</code> if there
+   *         is none
+   */
+  public File find(final String uri) {
+    return this.roots.resolve(uri);
+  }
+
+  /**
+   * @param file
+   * @param contentType
+   *          The content-type to send or <code>null</code> if unknown
+   * @param response
+   * @throws IOException
+   */
+  public void send(final File file, final String contentType,
+      final HttpServletResponse response) throws IOException {
+    final MappedFile mappedFile = getMappedFile(file);
+    // Each response needs its own indices on the shared buffer; jetty
+    // consumes the buffer while sending
+    final Buffer buffer = new View(mappedFile.buffer);
+    if (contentType != null) {
+      response.setContentType(contentType);
+    }
+    // The length of the mapped snapshot, even if the file changed meanwhile
+    response.setHeader("Content-Length", Integer.toString(buffer.length()));
+
+    final ServletOutputStream out = response.getOutputStream();
+    if (out instanceof HttpConnection.Output) {
+      ((HttpConnection.Output) out).sendContent(buffer);
+    } else {
+      buffer.writeTo(out);
+    }
+  }
+
+  private MappedFile getMappedFile(final File file) throws IOException {
+    final long lastModified = file.lastModified();
+    final long length = file.length();
+    MappedFile mappedFile;
+    synchronized (this.mapped) {
+      mappedFile = this.mapped.get(file);
+    }
+    if (mappedFile != null && mappedFile.lastModified == lastModified
+        && mappedFile.length == length) {
+      return mappedFile;
+    }
+    mappedFile = new MappedFile(lastModified, map(file));
+    if (mappedFile.length > MAX_MAPPED_SIZE) {
+      // Large files are mapped for a single response only
+      return mappedFile;
+    }
+    synchronized (this.mapped) {
+      final MappedFile previous = this.mapped.put(file, mappedFile);
+      if (previous != null) {
+        this.mappedTotal -= previous.length;
+      }
+      this.mappedTotal += mappedFile.length;
+      final Iterator<MappedFile> it = this.mapped.values().iterator();
+      while (this.mappedTotal > MAX_MAPPED_TOTAL && it.hasNext()) {
+        final MappedFile eldest = it.next();
+        if (eldest != mappedFile) {
+          this.mappedTotal -= eldest.length;
+          it.remove();
+        }
+      }
+    }
+    return mappedFile;
+  }
+
+  /**
+   * Maps the file with the size of the channel, so the buffer and the sent
+   * length always match.
+   */
+  private static Buffer map(final File file) throws IOException {
+    try (FileInputStream in = new FileInputStream(file)) {
+      final FileChannel channel = in.getChannel();
+      if (channel.size() > Integer.MAX_VALUE) {
+        throw new IOException("File too large to be served: " + file);
+      }
+      return new DirectNIOBuffer(channel.map(MapMode.READ_ONLY, 0,
+          channel.size()), true);
+    }
+  }
+
+  /**
+   * 
+   */
+  public void dispose() {
+    synchronized (this.mapped) {
+      this.mapped.clear();
+      this.mappedTotal = 0;
+    }
+  }
+
+  private static class MappedFile {
+
+    private final long lastModified;
+
+    private final long length;
+
+    private final Buffer buffer;
+
+    MappedFile(final long lastModified, final Buffer buffer) {
+      this.lastModified = lastModified;
+      this.length = buffer.length();
+      this.buffer = buffer;
+    }
+
+  }
+
+}
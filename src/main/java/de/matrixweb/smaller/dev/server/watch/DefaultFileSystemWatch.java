@@ -2,18 +2,23 @@ package de.matrixweb.smaller.dev.server.watch;
 
 import java.io.IOException;
 import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.DirectoryStream;
 import java.nio.file.FileSystems;
-import java.nio.file.FileVisitResult;
 import java.nio.file.Files;
+import java.nio.file.LinkOption;
 import java.nio.file.Path;
-import java.nio.file.SimpleFileVisitor;
 import java.nio.file.StandardWatchEventKinds;
 import java.nio.file.WatchEvent;
 import java.nio.file.WatchKey;
 import java.nio.file.WatchService;
 import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Map;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.commons.collections.CollectionUtils;
 import org.apache.commons.collections.Transformer;
@@ -25,15 +30,27 @@ public class DefaultFileSystemWatch implements FileSystemWatch {
 
   private final WatchService watchService;
 
-  private final Map<FileSystemWatchKey, Path> watches;
+  private final WatchRegistry watches;
+
+  private final DirectoryFilter filter;
+
+  private final SnapshotIndex snapshot;
 
   /**
    * @param watches
+   * @param filter
+   *          The filter to prune directories which should not be watched
+   * @param snapshot
+   *          The index to record the state of the files in registered
+   *          directories
    * @throws IOException
    */
-  public DefaultFileSystemWatch(final Map<FileSystemWatchKey, Path> watches)
+  public DefaultFileSystemWatch(final WatchRegistry watches,
+      final DirectoryFilter filter, final SnapshotIndex snapshot)
       throws IOException {
     this.watches = watches;
+    this.filter = filter;
+    this.snapshot = snapshot;
     this.watchService = FileSystems.getDefault().newWatchService();
   }
 
@@ -42,21 +59,26 @@ public class DefaultFileSystemWatch implements FileSystemWatch {
    */
   @Override
   public void register(final Path path) throws IOException {
-    Files.walkFileTree(path, new SimpleFileVisitor<Path>() {
-      @Override
-      public FileVisitResult preVisitDirectory(final Path dir,
-          final BasicFileAttributes attrs) throws IOException {
-        if (!DefaultFileSystemWatch.this.watches.containsValue(dir)) {
-          final FileSystemWatchKey key = new DefaultWatchKey(dir.register(
-              DefaultFileSystemWatch.this.watchService,
-              StandardWatchEventKinds.ENTRY_CREATE,
-              StandardWatchEventKinds.ENTRY_MODIFY,
-              StandardWatchEventKinds.ENTRY_DELETE));
-          DefaultFileSystemWatch.this.watches.put(key, dir);
-        }
-        return FileVisitResult.CONTINUE;
-      }
-    });
+    if (!Files.isDirectory(path, LinkOption.NOFOLLOW_LINKS)
+        || !this.filter.accept(path)) {
+      return;
+    }
+    final Queue<IOException> failures = new ConcurrentLinkedQueue<>();
+    // Each directory is listed and registered by its own task
+    DirectoryWalker.POOL.invoke(new RegisterTask(path, failures));
+    if (!failures.isEmpty()) {
+      throw failures.peek();
+    }
+  }
+
+  private void registerDirectory(final Path dir) throws IOException {
+    if (!this.watches.isWatched(dir)) {
+      final FileSystemWatchKey key = new DefaultWatchKey(dir.register(
+          this.watchService, StandardWatchEventKinds.ENTRY_CREATE,
+          StandardWatchEventKinds.ENTRY_MODIFY,
+          StandardWatchEventKinds.ENTRY_DELETE));
+      this.watches.put(key, dir);
+    }
   }
 
   /**
@@ -71,6 +93,21 @@ public class DefaultFileSystemWatch implements FileSystemWatch {
     }
   }
 
+  /**
+   * @see de.matrixweb.smaller.dev.server.watch.FileSystemWatch#poll(long,
+   *      java.util.concurrent.TimeUnit)
+   */
+  @Override
+  public FileSystemWatchKey poll(final long timeout, final TimeUnit unit)
+      throws InterruptedException {
+    try {
+      final WatchKey key = this.watchService.poll(timeout, unit);
+      return key != null ? new DefaultWatchKey(key) : null;
+    } catch (final ClosedWatchServiceException e) {
+      throw new FileSystemClosedWatchServiceException();
+    }
+  }
+
   /**
    * @see de.matrixweb.smaller.dev.server.watch.FileSystemWatch#close()
    */
@@ -79,6 +116,52 @@ public class DefaultFileSystemWatch implements FileSystemWatch {
     this.watchService.close();
   }
 
+  private class RegisterTask extends RecursiveAction {
+
+    private static final long serialVersionUID = -4183516224830571542L;
+
+    private final Path dir;
+
+    private final Queue<IOException> failures;
+
+    RegisterTask(final Path dir, final Queue<IOException> failures) {
+      this.dir = dir;
+      this.failures = failures;
+    }
+
+    @Override
+    protected void compute() {
+      final List<RegisterTask> tasks = new ArrayList<>();
+      try {
+        registerDirectory(this.dir);
+        try (DirectoryStream<Path> stream = Files
+            .newDirectoryStream(this.dir)) {
+          for (final Path child : stream) {
+            final BasicFileAttributes attrs;
+            try {
+              attrs = Files.readAttributes(child, BasicFileAttributes.class,
+                  LinkOption.NOFOLLOW_LINKS);
+            } catch (final IOException e) {
+              // Deleted since listed
+              continue;
+            }
+            if (attrs.isDirectory()) {
+              if (DefaultFileSystemWatch.this.filter.accept(child)) {
+                tasks.add(new RegisterTask(child, this.failures));
+              }
+            } else if (attrs.isRegularFile()) {
+              DefaultFileSystemWatch.this.snapshot.put(child, attrs);
+            }
+          }
+        }
+      } catch (final IOException e) {
+        this.failures.add(e);
+      }
+      invokeAll(tasks);
+    }
+
+  }
+
   /** */
   public static class DefaultWatchKey implements FileSystemWatchKey {
 
@@ -216,6 +299,14 @@ public class DefaultFileSystemWatch implements FileSystemWatch {
         return this.kind == StandardWatchEventKinds.ENTRY_CREATE;
       }
 
+      /**
+       * @see de.matrixweb.smaller.dev.server.watch.FileSystemWatch.FileSytemWatchEvent.Kind#isEntryDelete()
+       */
+      @Override
+      public boolean isEntryDelete() {
+        return this.kind == StandardWatchEventKinds.ENTRY_DELETE;
+      }
+
     }
 
   }
@@ -0,0 +1,20 @@
+package de.matrixweb.smaller.dev.server.watch;
+
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * The pool walking directory trees for all watches and snapshots. Walking is
+ * bound by the file system, so a few threads are sufficient. The threads are
+ * daemons and the pool is shared for the lifetime of the server.
+ *
+ * @author marwol
+ */
+final class DirectoryWalker {
+
+  static final ForkJoinPool POOL = new ForkJoinPool(Math.min(4, Runtime
+      .getRuntime().availableProcessors()));
+
+  private DirectoryWalker() {
+  }
+
+}
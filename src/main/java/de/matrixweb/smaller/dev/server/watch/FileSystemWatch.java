@@ -3,7 +3,7 @@ package de.matrixweb.smaller.dev.server.watch;
 import java.io.IOException;
 import java.nio.file.Path;
 import java.util.Collection;
-import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 /**
  * @author marwol
@@ -22,6 +22,16 @@ public interface FileSystemWatch {
    */
   FileSystemWatchKey take() throws InterruptedException;
 
+  /**
+   * @param timeout
+   * @param unit
+   * @return Returns the next signalled key or <code>null</code> if none was
+   *         signalled within the given time
+   * @throws InterruptedException
+   */
+  FileSystemWatchKey poll(long timeout, TimeUnit unit)
+      throws InterruptedException;
+
   /**
    * @throws IOException
    */
@@ -51,10 +61,24 @@ public interface FileSystemWatch {
 
       boolean isEntryCreate();
 
+      boolean isEntryDelete();
+
     }
 
   }
 
+  /** */
+  static interface DirectoryFilter {
+
+    /**
+     * @param dir
+     * @return Returns false if the directory and its children should not be
+     *         watched
+     */
+    boolean accept(Path dir);
+
+  }
+
   /** */
   static class FileSystemClosedWatchServiceException extends RuntimeException {
 
@@ -65,13 +89,18 @@ public interface FileSystemWatch {
   /** */
   static class Factory {
 
-    public static FileSystemWatch create(
-        final Map<FileSystemWatchKey, Path> watches) throws IOException {
+    public static FileSystemWatch create(final WatchRegistry watches,
+        final DirectoryFilter filter, final SnapshotIndex snapshot,
+        final boolean polling) throws IOException {
+      if (polling) {
+        return new PollingFileSystemWatch(watches, filter);
+      }
       final String osName = System.getProperty("os.name");
       if (osName.startsWith("Mac OS X") || osName.startsWith("Darwin")) {
-        return new MacOsFileSystemWatch(watches);
+        // Watches whole trees, so the filter is only used for the snapshot
+        return new MacOsFileSystemWatch(watches, filter, snapshot);
       }
-      return new DefaultFileSystemWatch(watches);
+      return new DefaultFileSystemWatch(watches, filter, snapshot);
     }
 
   }
@@ -4,7 +4,8 @@ import java.io.File;
 import java.io.IOException;
 import java.nio.file.Path;
 import java.util.Collection;
-import java.util.Map;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.commons.collections.CollectionUtils;
 import org.apache.commons.collections.Transformer;
@@ -23,13 +24,24 @@ public class MacOsFileSystemWatch implements FileSystemWatch {
 
   private final WatchService watchService;
 
-  private final Map<FileSystemWatchKey, Path> watches;
+  private final WatchRegistry watches;
+
+  private final DirectoryFilter filter;
+
+  private final SnapshotIndex snapshot;
 
   /**
    * @param watches
+   * @param filter
+   *          The filter for directories to record in the snapshot
+   * @param snapshot
+   *          The index to record the state of the files in registered trees
    */
-  public MacOsFileSystemWatch(final Map<FileSystemWatchKey, Path> watches) {
+  public MacOsFileSystemWatch(final WatchRegistry watches,
+      final DirectoryFilter filter, final SnapshotIndex snapshot) {
     this.watches = watches;
+    this.filter = filter;
+    this.snapshot = snapshot;
     this.watchService = WatchService.newWatchService();
   }
 
@@ -38,19 +50,15 @@ public class MacOsFileSystemWatch implements FileSystemWatch {
    */
   @Override
   public void register(final Path path) throws IOException {
-    boolean watching = false;
-    for (final Path current : this.watches.values()) {
-      if (path.startsWith(current)) {
-        watching = true;
-      }
-    }
-    if (!watching) {
+    // Watches are recursive, so only trees not already watched are registered
+    if (!this.watches.isCovered(path)) {
       this.watches.put(
           new MacOsWatchKey(new WatchableFile(path.toFile()).register(
               this.watchService, StandardWatchEventKind.OVERFLOW,
               StandardWatchEventKind.ENTRY_CREATE,
               StandardWatchEventKind.ENTRY_MODIFY,
               StandardWatchEventKind.ENTRY_DELETE)), path);
+      this.snapshot.rescan(Collections.singleton(path), this.filter);
     }
   }
 
@@ -66,6 +74,21 @@ public class MacOsFileSystemWatch implements FileSystemWatch {
     }
   }
 
+  /**
+   * @see de.matrixweb.smaller.dev.server.watch.FileSystemWatch#poll(long,
+   *      java.util.concurrent.TimeUnit)
+   */
+  @Override
+  public FileSystemWatchKey poll(final long timeout, final TimeUnit unit)
+      throws InterruptedException {
+    try {
+      final WatchKey key = this.watchService.poll(timeout, unit);
+      return key != null ? new MacOsWatchKey(key) : null;
+    } catch (final ClosedWatchServiceException e) {
+      throw new FileSystemClosedWatchServiceException();
+    }
+  }
+
   /**
    * @see de.matrixweb.smaller.dev.server.watch.FileSystemWatch#close()
    */
@@ -212,6 +235,14 @@ public class MacOsFileSystemWatch implements FileSystemWatch {
         return this.kind == StandardWatchEventKind.ENTRY_CREATE;
       }
 
+      /**
+       * @see de.matrixweb.smaller.dev.server.watch.FileSystemWatch.FileSytemWatchEvent.Kind#isEntryDelete()
+       */
+      @Override
+      public boolean isEntryDelete() {
+        return this.kind == StandardWatchEventKind.ENTRY_DELETE;
+      }
+
     }
 
   }
@@ -0,0 +1,487 @@
+package de.matrixweb.smaller.dev.server.watch;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Detects changes by polling the registered directories. Used where native
+ * file events are not delivered (e.g. docker volumes, vagrant shares or NFS).
+ *
+ * Each directory keeps a compact sorted index of its entries (name,
+ * modification time and size). The directories are polled in batches by a
+ * small thread pool. The interval is short right after a change and grows
+ * while idle; it is never shorter than a multiple of the last poll duration
+ * to bound the cpu usage for large trees.
+ *
+ * @author marwol
+ */
+public class PollingFileSystemWatch implements FileSystemWatch {
+
+  private static final Logger LOGGER = LoggerFactory
+      .getLogger(PollingFileSystemWatch.class);
+
+  private static final long MIN_INTERVAL = 100;
+
+  private static final long MAX_INTERVAL = 2000;
+
+  /** The pollers are busy at most 1 / IDLE_FACTOR of the time */
+  private static final int IDLE_FACTOR = 4;
+
+  private static final int BATCH_SIZE = 64;
+
+  private final WatchRegistry watches;
+
+  private final DirectoryFilter filter;
+
+  private final ConcurrentMap<Path, PollingWatchKey> keys = new ConcurrentHashMap<>();
+
+  private final BlockingQueue<PollingWatchKey> signalled = new LinkedBlockingQueue<>();
+
+  private final ExecutorService pollers;
+
+  private final Thread thread;
+
+  private volatile boolean closed = false;
+
+  /**
+   * @param watches
+   * @param filter
+   *          The filter to prune directories which should not be watched
+   */
+  public PollingFileSystemWatch(final WatchRegistry watches,
+      final DirectoryFilter filter) {
+    this.watches = watches;
+    this.filter = filter;
+    this.pollers = Executors.newFixedThreadPool(
+        Math.min(4, Runtime.getRuntime().availableProcessors()),
+        new ThreadFactoryBuilder().setNameFormat("smaller-poll-%d")
+            .setDaemon(true).build());
+    this.thread = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        PollingFileSystemWatch.this.run();
+      }
+    }, "Smaller Resource Poller");
+    this.thread.setDaemon(true);
+    this.thread.start();
+  }
+
+  /**
+   * @see de.matrixweb.smaller.dev.server.watch.FileSystemWatch#register(java.nio.file.Path)
+   */
+  @Override
+  public void register(final Path path) throws IOException {
+    if (!Files.isDirectory(path, LinkOption.NOFOLLOW_LINKS)
+        || !this.filter.accept(path)) {
+      return;
+    }
+    final Queue<IOException> failures = new ConcurrentLinkedQueue<>();
+    DirectoryWalker.POOL.invoke(new RegisterTask(path, failures));
+    if (!failures.isEmpty()) {
+      throw failures.peek();
+    }
+  }
+
+  private void run() {
+    long interval = MIN_INTERVAL;
+    while (!this.closed) {
+      final long start = System.currentTimeMillis();
+      try {
+        final boolean changed = pollAll();
+        final long duration = System.currentTimeMillis() - start;
+        interval = changed ? MIN_INTERVAL : Math.min(interval * 2,
+            MAX_INTERVAL);
+        Thread.sleep(Math.max(interval, duration * IDLE_FACTOR));
+      } catch (final InterruptedException | RejectedExecutionException e) {
+        // Closed
+      } catch (final ExecutionException e) {
+        LOGGER.warn("Failed to poll for changes", e.getCause());
+      }
+    }
+  }
+
+  private boolean pollAll() throws InterruptedException, ExecutionException {
+    final List<Callable<Boolean>> batches = new ArrayList<>();
+    List<PollingWatchKey> batch = new ArrayList<>(BATCH_SIZE);
+    for (final PollingWatchKey key : this.keys.values()) {
+      batch.add(key);
+      if (batch.size() == BATCH_SIZE) {
+        batches.add(new PollBatch(batch));
+        batch = new ArrayList<>(BATCH_SIZE);
+      }
+    }
+    if (!batch.isEmpty()) {
+      batches.add(new PollBatch(batch));
+    }
+    boolean changed = false;
+    for (final Future<Boolean> result : this.pollers.invokeAll(batches)) {
+      changed |= result.get();
+    }
+    return changed;
+  }
+
+  /**
+   * @see de.matrixweb.smaller.dev.server.watch.FileSystemWatch#take()
+   */
+  @Override
+  public FileSystemWatchKey take() throws InterruptedException {
+    return checkClosed(this.signalled.take());
+  }
+
+  /**
+   * @see de.matrixweb.smaller.dev.server.watch.FileSystemWatch#poll(long,
+   *      java.util.concurrent.TimeUnit)
+   */
+  @Override
+  public FileSystemWatchKey poll(final long timeout, final TimeUnit unit)
+      throws InterruptedException {
+    return checkClosed(this.signalled.poll(timeout, unit));
+  }
+
+  private FileSystemWatchKey checkClosed(final PollingWatchKey key) {
+    if (this.closed) {
+      // Wake up further waiting threads
+      this.signalled.offer(PollingWatchKey.CLOSED);
+      throw new FileSystemClosedWatchServiceException();
+    }
+    return key;
+  }
+
+  /**
+   * @see de.matrixweb.smaller.dev.server.watch.FileSystemWatch#close()
+   */
+  @Override
+  public void close() throws IOException {
+    this.closed = true;
+    this.thread.interrupt();
+    this.pollers.shutdownNow();
+    this.signalled.offer(PollingWatchKey.CLOSED);
+  }
+
+  private class RegisterTask extends RecursiveAction {
+
+    private static final long serialVersionUID = -1532486498372054318L;
+
+    private final Path dir;
+
+    private final Queue<IOException> failures;
+
+    RegisterTask(final Path dir, final Queue<IOException> failures) {
+      this.dir = dir;
+      this.failures = failures;
+    }
+
+    @Override
+    protected void compute() {
+      if (PollingFileSystemWatch.this.keys.containsKey(this.dir)) {
+        return;
+      }
+      final List<RegisterTask> tasks = new ArrayList<>();
+      final PollingFileSystemWatch watch = PollingFileSystemWatch.this;
+      final PollingWatchKey key = new PollingWatchKey(this.dir,
+          watch.signalled);
+      try {
+        // The initial scan is the baseline and reports nothing
+        key.scan(false);
+        if (watch.keys.putIfAbsent(this.dir, key) == null) {
+          watch.watches.put(key, this.dir);
+          for (final String name : key.getDirectories()) {
+            final Path child = this.dir.resolve(name);
+            if (watch.filter.accept(child)) {
+              tasks.add(new RegisterTask(child, this.failures));
+            }
+          }
+        }
+      } catch (final IOException e) {
+        this.failures.add(e);
+      }
+      invokeAll(tasks);
+    }
+
+  }
+
+  private class PollBatch implements Callable<Boolean> {
+
+    private final List<PollingWatchKey> batch;
+
+    PollBatch(final List<PollingWatchKey> batch) {
+      this.batch = batch;
+    }
+
+    @Override
+    public Boolean call() {
+      boolean changed = false;
+      for (final PollingWatchKey key : this.batch) {
+        try {
+          changed |= key.scan(true);
+        } catch (final IOException e) {
+          // The directory is gone, the key is reported as invalid
+          PollingFileSystemWatch.this.keys.remove(key.dir, key);
+          key.cancel();
+          changed = true;
+        }
+      }
+      return changed;
+    }
+
+  }
+
+  /**
+   * Watch key of a single directory.
+   */
+  static class PollingWatchKey implements FileSystemWatchKey {
+
+    static final PollingWatchKey CLOSED = new PollingWatchKey(null, null);
+
+    private static final String[] NO_NAMES = new String[0];
+
+    private static final long[] NO_VALUES = new long[0];
+
+    private final Path dir;
+
+    private final BlockingQueue<PollingWatchKey> signalled;
+
+    // Sorted by name; directories have a size of -1
+    private String[] names = NO_NAMES;
+
+    private long[] lastModified = NO_VALUES;
+
+    private long[] sizes = NO_VALUES;
+
+    private List<FileSytemWatchEvent<?>> events = new ArrayList<>();
+
+    private boolean pending = false;
+
+    private volatile boolean valid = true;
+
+    PollingWatchKey(final Path dir,
+        final BlockingQueue<PollingWatchKey> signalled) {
+      this.dir = dir;
+      this.signalled = signalled;
+    }
+
+    List<String> getDirectories() {
+      final List<String> dirs = new ArrayList<>();
+      for (int i = 0; i < this.names.length; i++) {
+        if (this.sizes[i] == -1) {
+          dirs.add(this.names[i]);
+        }
+      }
+      return dirs;
+    }
+
+    /**
+     * Lists the directory and compares it with the previous state.
+     *
+     * @return Returns true if there were changes
+     */
+    boolean scan(final boolean report) throws IOException {
+      final List<String> current = new ArrayList<>();
+      try (DirectoryStream<Path> stream = Files.newDirectoryStream(this.dir)) {
+        for (final Path child : stream) {
+          current.add(child.getFileName().toString());
+        }
+      }
+      Collections.sort(current);
+      String[] newNames = new String[current.size()];
+      long[] newLastModified = new long[newNames.length];
+      long[] newSizes = new long[newNames.length];
+      int count = 0;
+      for (final String name : current) {
+        try {
+          final BasicFileAttributes attrs = Files.readAttributes(
+              this.dir.resolve(name), BasicFileAttributes.class,
+              LinkOption.NOFOLLOW_LINKS);
+          newNames[count] = name;
+          newLastModified[count] = attrs.lastModifiedTime().toMillis();
+          newSizes[count] = attrs.isDirectory() ? -1 : attrs.size();
+          count++;
+        } catch (final IOException e) {
+          // Deleted since listed
+        }
+      }
+      if (count < newNames.length) {
+        newNames = Arrays.copyOf(newNames, count);
+        newLastModified = Arrays.copyOf(newLastModified, count);
+        newSizes = Arrays.copyOf(newSizes, count);
+      }
+
+      final List<FileSytemWatchEvent<?>> changes = new ArrayList<>();
+      int o = 0;
+      int n = 0;
+      while (o < this.names.length || n < newNames.length) {
+        final int cmp = o == this.names.length ? 1
+            : n == newNames.length ? -1 : this.names[o]
+                .compareTo(newNames[n]);
+        if (cmp < 0) {
+          changes.add(new PollingEvent(PollingKind.DELETE, this.names[o++]));
+        } else if (cmp > 0) {
+          changes.add(new PollingEvent(PollingKind.CREATE, newNames[n++]));
+        } else {
+          // Only files are modified, directories are watched by own keys
+          if (newSizes[n] != -1
+              && (newSizes[n] != this.sizes[o]
+                  || newLastModified[n] != this.lastModified[o])) {
+            changes.add(new PollingEvent(PollingKind.MODIFY, newNames[n]));
+          }
+          o++;
+          n++;
+        }
+      }
+      this.names = newNames;
+      this.lastModified = newLastModified;
+      this.sizes = newSizes;
+
+      if (report && !changes.isEmpty()) {
+        synchronized (this) {
+          this.events.addAll(changes);
+          signal();
+        }
+        return true;
+      }
+      return false;
+    }
+
+    /**
+     * Invalidates the key after its directory is gone. The entries are
+     * reported as deleted, like native watches do.
+     */
+    synchronized void cancel() {
+      for (final String name : this.names) {
+        this.events.add(new PollingEvent(PollingKind.DELETE, name));
+      }
+      this.names = NO_NAMES;
+      this.lastModified = NO_VALUES;
+      this.sizes = NO_VALUES;
+      this.valid = false;
+      signal();
+    }
+
+    private void signal() {
+      if (!this.pending) {
+        this.pending = true;
+        this.signalled.offer(this);
+      }
+    }
+
+    /**
+     * @see de.matrixweb.smaller.dev.server.watch.FileSystemWatch.FileSystemWatchKey#pollEvents()
+     */
+    @Override
+    public synchronized Collection<FileSytemWatchEvent<?>> pollEvents() {
+      final List<FileSytemWatchEvent<?>> polled = this.events;
+      this.events = new ArrayList<>();
+      return polled;
+    }
+
+    /**
+     * @see de.matrixweb.smaller.dev.server.watch.FileSystemWatch.FileSystemWatchKey#reset()
+     */
+    @Override
+    public synchronized boolean reset() {
+      this.pending = false;
+      if (!this.events.isEmpty()) {
+        signal();
+      }
+      return this.valid;
+    }
+
+  }
+
+  private static class PollingEvent implements FileSytemWatchEvent<Path> {
+
+    private final PollingKind kind;
+
+    private final Path context;
+
+    PollingEvent(final PollingKind kind, final String name) {
+      this.kind = kind;
+      this.context = Paths.get(name);
+    }
+
+    /**
+     * @see de.matrixweb.smaller.dev.server.watch.FileSystemWatch.FileSytemWatchEvent#kind()
+     */
+    @Override
+    public Kind<Path> kind() {
+      return this.kind;
+    }
+
+    /**
+     * @see de.matrixweb.smaller.dev.server.watch.FileSystemWatch.FileSytemWatchEvent#context()
+     */
+    @Override
+    public Path context() {
+      return this.context;
+    }
+
+    /**
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+      return this.kind + " " + this.context;
+    }
+
+  }
+
+  private static enum PollingKind implements FileSytemWatchEvent.Kind<Path> {
+
+    CREATE, MODIFY, DELETE;
+
+    /**
+     * @see de.matrixweb.smaller.dev.server.watch.FileSystemWatch.FileSytemWatchEvent.Kind#isOverflow()
+     */
+    @Override
+    public boolean isOverflow() {
+      return false;
+    }
+
+    /**
+     * @see de.matrixweb.smaller.dev.server.watch.FileSystemWatch.FileSytemWatchEvent.Kind#isEntryCreate()
+     */
+    @Override
+    public boolean isEntryCreate() {
+      return this == CREATE;
+    }
+
+    /**
+     * @see de.matrixweb.smaller.dev.server.watch.FileSystemWatch.FileSytemWatchEvent.Kind#isEntryDelete()
+     */
+    @Override
+    public boolean isEntryDelete() {
+      return this == DELETE;
+    }
+
+  }
+
+}
@@ -0,0 +1,230 @@
+package de.matrixweb.smaller.dev.server.watch;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.RecursiveAction;
+
+import de.matrixweb.smaller.dev.server.watch.FileSystemWatch.DirectoryFilter;
+
+/**
+ * Modification time and size of every watched file. Used to find the real
+ * changes of a directory tree if the watch service lost events.
+ *
+ * @author marwol
+ */
+public class SnapshotIndex {
+
+  private final ConcurrentMap<Path, FileState> files = new ConcurrentHashMap<>();
+
+  /**
+   * @param file
+   * @param attrs
+   */
+  public void put(final Path file, final BasicFileAttributes attrs) {
+    this.files.put(file, new FileState(attrs));
+  }
+
+  /**
+   * Reads the current state of the given file.
+   *
+   * @param file
+   */
+  public void update(final Path file) {
+    try {
+      put(file, Files.readAttributes(file, BasicFileAttributes.class,
+          LinkOption.NOFOLLOW_LINKS));
+    } catch (final IOException e) {
+      this.files.remove(file);
+    }
+  }
+
+  /**
+   * @param file
+   */
+  public void remove(final Path file) {
+    this.files.remove(file);
+  }
+
+  /**
+   * @return Returns the number of known files
+   */
+  public int size() {
+    return this.files.size();
+  }
+
+  /**
+   * Scans the given directory trees and updates the index. Nested trees are
+   * scanned only once.
+   *
+   * @param dirs
+   * @param filter
+   *          The filter for directories to scan
+   * @return Returns the differences between the index and the current files
+   */
+  public Diff rescan(final Collection<Path> dirs, final DirectoryFilter filter) {
+    final List<Path> roots = new ArrayList<>();
+    for (final Path dir : new TreeSet<>(dirs)) {
+      if (!isContained(dir, roots)) {
+        roots.add(dir);
+      }
+    }
+    final Map<Path, FileState> current = new ConcurrentHashMap<>();
+    final List<ScanTask> tasks = new ArrayList<>(roots.size());
+    for (final Path root : roots) {
+      tasks.add(new ScanTask(root, filter, current));
+    }
+    for (final ScanTask task : tasks) {
+      DirectoryWalker.POOL.execute(task);
+    }
+    for (final ScanTask task : tasks) {
+      task.join();
+    }
+
+    final Diff diff = new Diff();
+    for (final Entry<Path, FileState> entry : current.entrySet()) {
+      final FileState previous = this.files.put(entry.getKey(),
+          entry.getValue());
+      if (previous == null) {
+        diff.created.add(entry.getKey());
+      } else if (!previous.equals(entry.getValue())) {
+        diff.modified.add(entry.getKey());
+      }
+    }
+    for (final Path file : this.files.keySet()) {
+      if (!current.containsKey(file) && isContained(file, roots)) {
+        this.files.remove(file);
+        diff.deleted.add(file);
+      }
+    }
+    return diff;
+  }
+
+  private static boolean isContained(final Path path, final List<Path> roots) {
+    for (final Path root : roots) {
+      if (path.startsWith(root)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /** */
+  public static class Diff {
+
+    private final List<Path> created = new ArrayList<>();
+
+    private final List<Path> modified = new ArrayList<>();
+
+    private final List<Path> deleted = new ArrayList<>();
+
+    /**
+     * @return the created
+     */
+    public List<Path> getCreated() {
+      return this.created;
+    }
+
+    /**
+     * @return the modified
+     */
+    public List<Path> getModified() {
+      return this.modified;
+    }
+
+    /**
+     * @return the deleted
+     */
+    public List<Path> getDeleted() {
+      return this.deleted;
+    }
+
+  }
+
+  private static class FileState {
+
+    private final long lastModified;
+
+    private final long size;
+
+    FileState(final BasicFileAttributes attrs) {
+      this.lastModified = attrs.lastModifiedTime().toMillis();
+      this.size = attrs.size();
+    }
+
+    @Override
+    public int hashCode() {
+      return (int) (this.lastModified ^ this.lastModified >>> 32)
+          ^ (int) this.size;
+    }
+
+    @Override
+    public boolean equals(final Object obj) {
+      if (!(obj instanceof FileState)) {
+        return false;
+      }
+      final FileState other = (FileState) obj;
+      return this.lastModified == other.lastModified
+          && this.size == other.size;
+    }
+
+  }
+
+  private static class ScanTask extends RecursiveAction {
+
+    private static final long serialVersionUID = 2860934811409317725L;
+
+    private final Path dir;
+
+    private final DirectoryFilter filter;
+
+    private final Map<Path, FileState> result;
+
+    ScanTask(final Path dir, final DirectoryFilter filter,
+        final Map<Path, FileState> result) {
+      this.dir = dir;
+      this.filter = filter;
+      this.result = result;
+    }
+
+    @Override
+    protected void compute() {
+      final List<ScanTask> tasks = new ArrayList<>();
+      try (DirectoryStream<Path> stream = Files.newDirectoryStream(this.dir)) {
+        for (final Path child : stream) {
+          final BasicFileAttributes attrs;
+          try {
+            attrs = Files.readAttributes(child, BasicFileAttributes.class,
+                LinkOption.NOFOLLOW_LINKS);
+          } catch (final IOException e) {
+            // Deleted since listed
+            continue;
+          }
+          if (attrs.isDirectory()) {
+            if (this.filter.accept(child)) {
+              tasks.add(new ScanTask(child, this.filter, this.result));
+            }
+          } else if (attrs.isRegularFile()) {
+            this.result.put(child, new FileState(attrs));
+          }
+        }
+      } catch (final IOException e) {
+        // Deleted while scanning
+      }
+      invokeAll(tasks);
+    }
+
+  }
+
+}
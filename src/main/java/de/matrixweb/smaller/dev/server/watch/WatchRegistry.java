@@ -0,0 +1,78 @@
+package de.matrixweb.smaller.dev.server.watch;
+
+import java.nio.file.Path;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import de.matrixweb.smaller.dev.server.watch.FileSystemWatch.FileSystemWatchKey;
+
+/**
+ * Bidirectional registry of watch keys and the directories they watch. Both
+ * directions are looked up in constant time and could be used concurrently.
+ *
+ * @author marwol
+ */
+public class WatchRegistry {
+
+  private final ConcurrentMap<FileSystemWatchKey, Path> paths = new ConcurrentHashMap<>();
+
+  private final ConcurrentMap<Path, FileSystemWatchKey> keys = new ConcurrentHashMap<>();
+
+  /**
+   * @param key
+   * @param path
+   */
+  public void put(final FileSystemWatchKey key, final Path path) {
+    this.paths.put(key, path);
+    this.keys.put(path, key);
+  }
+
+  /**
+   * @param key
+   * @return Returns the directory watched by the given key or
+   *         <code>null</code> if the key is not registered
+   */
+  public Path get(final FileSystemWatchKey key) {
+    return this.paths.get(key);
+  }
+
+  /**
+   * @param path
+   * @return Returns true if the given directory is watched
+   */
+  public boolean isWatched(final Path path) {
+    return this.keys.containsKey(path);
+  }
+
+  /**
+   * @param path
+   * @return Returns true if the given directory or one of its parents is
+   *         watched (for providers watching whole trees)
+   */
+  public boolean isCovered(final Path path) {
+    for (Path current = path; current != null; current = current.getParent()) {
+      if (this.keys.containsKey(current)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * @param key
+   */
+  public void remove(final FileSystemWatchKey key) {
+    final Path path = this.paths.remove(key);
+    if (path != null) {
+      this.keys.remove(path, key);
+    }
+  }
+
+  /**
+   * @return Returns the number of watched directories
+   */
+  public int size() {
+    return this.paths.size();
+  }
+
+}
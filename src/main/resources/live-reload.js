@@ -1,5 +1,91 @@
 (function() {
   var __socket = new WebSocket(location.href.replace(/https?:\/\/([^/]+)\/.*/, 'ws://$1/live-reload'), 'live-reload');
+  var __styles = {};
+  // Relative urls in inlined styles have to be resolved against the stylesheet
+  var rebase = function(text, href) {
+    return text.replace(/url\(\s*(['"]?)([^'")]+)\1\s*\)/g, function(match, quote, url) {
+      if (/^([a-z]+:|\/|#)/i.test(url)) {
+        return match;
+      }
+      return 'url(' + quote + new URL(url, href).href + quote + ')';
+    });
+  };
+  // The links of a stylesheet; the uri could also be a pattern
+  var findLinks = function(css) {
+    var node = document.querySelector('link[href^="' + css + '"]');
+    if (node) {
+      return [node];
+    }
+    var links = [];
+    var regexp = new RegExp(css);
+    var nodes = document.querySelectorAll('link[href][type="text/css"]');
+    for (var i = 0, n = nodes.length; i < n; i++) {
+      if (nodes[i].getAttribute('href').match(regexp) !== null) {
+        links.push(nodes[i]);
+      }
+    }
+    return links;
+  };
+  var refreshCss = function(css) {
+    // Injected styles are dropped in favour of the reloaded stylesheet
+    var style = __styles[css];
+    if (style) {
+      delete __styles[css];
+      for (var i = 0, n = style.targets.length; i < n; i++) {
+        var target = style.targets[i];
+        target.node.parentNode.removeChild(target.node);
+        target.link.disabled = false;
+      }
+      // Following updates have to send the full content again
+      __socket.send(JSON.stringify({ kind: 'ack', css: css, version: null }));
+    }
+    var links = findLinks(css);
+    for (var i = 0, n = links.length; i < n; i++) {
+      links[i].setAttribute('href', links[i].getAttribute('href'));
+    }
+  };
+  // Returns false if the stylesheet is not linked by this page
+  var applyCss = function(data) {
+    var style = __styles[data.css];
+    var text = data.content;
+    if (data.base) {
+      var base = style && style.versions[data.base];
+      if (base === undefined) {
+        location.reload();
+        return true;
+      }
+      text = base.substring(0, data.prefix) + data.text + base.substring(base.length - data.suffix);
+    }
+    if (!style) {
+      var links = findLinks(data.css);
+      if (links.length === 0) {
+        return false;
+      }
+      // The links are only disabled, so they could be refreshed later on
+      style = __styles[data.css] = { targets: [], versions: {} };
+      for (var i = 0, n = links.length; i < n; i++) {
+        var node = document.createElement('style');
+        node.setAttribute('data-href', data.css);
+        links[i].parentNode.insertBefore(node, links[i].nextSibling);
+        links[i].disabled = true;
+        style.targets.push({ link: links[i], node: node });
+      }
+    }
+    for (var i = 0, n = style.targets.length; i < n; i++) {
+      var target = style.targets[i];
+      target.node.textContent = rebase(text, target.link.href);
+    }
+    // The previous version is kept for patches sent before the ack arrived
+    var versions = {};
+    if (style.current) {
+      versions[style.current] = style.versions[style.current];
+    }
+    versions[data.version] = text;
+    style.versions = versions;
+    style.current = data.version;
+    __socket.send(JSON.stringify({ kind: 'ack', css: data.css, version: data.version }));
+    return true;
+  };
   __socket.onmessage = function(e) {
     var message = JSON.parse(e.data);
     if (message.kind === 'reload') {
@@ -33,21 +119,13 @@
           }
         }
         if (message.data.css) {
-          var node = document.querySelector('link[href^="' + message.data.css + '"]');
-          if (node) {
-            node.setAttribute('href', node.getAttribute('href'));
-          } else {
-            var regexp = new RegExp(message.data.css);
-            var nodes = document.querySelectorAll('link[href][type="text/css"]');
-            for (var i = 0, n = nodes.length; i < n; i++) {
-              node = nodes[i];
-              if (node.getAttribute('href').match(regexp) !== null) {
-                node.setAttribute('href', node.getAttribute('href'));
-              }
-            }
-          }
+          refreshCss(message.data.css);
         }
       }
+    } else if (message.kind === 'css') {
+      if (!applyCss(message.data)) {
+        refreshCss(message.data.css);
+      }
     } else if (message.kind === 'ping') {
       __socket.send('pong');
     }
@@ -0,0 +1,71 @@
+package de.matrixweb.smaller.dev.server;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.*;
+
+import static org.hamcrest.CoreMatchers.*;
+
+/**
+ * @author markusw
+ */
+public class BuildCacheTest {
+
+  /** */
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  /**
+   * Concurrent writers of the same entry must not clobber each other; the
+   * entry contains one complete content and no temp files are left.
+   *
+   * @throws Exception
+   */
+  @Test
+  public void testConcurrentStore() throws Exception {
+    final File directory = this.folder.newFolder("cache");
+    final BuildCache cache = new BuildCache(directory);
+    final byte[] first = new byte[1024 * 1024];
+    Arrays.fill(first, (byte) 'a');
+    final byte[] second = new byte[1024 * 1024];
+    Arrays.fill(second, (byte) 'b');
+
+    final ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      final List<Future<?>> futures = new ArrayList<>();
+      for (int i = 0; i < 16; i++) {
+        final byte[] content = i % 2 == 0 ? first : second;
+        futures.add(executor.submit(new Callable<Void>() {
+          @Override
+          public Void call() {
+            cache.store("key", content);
+            return null;
+          }
+        }));
+      }
+      for (final Future<?> future : futures) {
+        future.get();
+      }
+    } finally {
+      executor.shutdown();
+    }
+
+    final byte[] content = cache.load("key");
+    assertThat(content, is(notNullValue()));
+    assertThat(Arrays.equals(content, first)
+        || Arrays.equals(content, second), is(true));
+    assertThat(directory.list(), is(new String[] { "key" }));
+  }
+
+}
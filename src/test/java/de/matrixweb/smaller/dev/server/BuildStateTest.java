@@ -0,0 +1,76 @@
+package de.matrixweb.smaller.dev.server;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import de.matrixweb.smaller.dev.server.BuildState.Build;
+
+import static org.junit.Assert.*;
+
+import static org.hamcrest.CoreMatchers.*;
+
+/**
+ * @author markusw
+ */
+public class BuildStateTest {
+
+  /**
+   * Changes which did not change any content must not cancel the running
+   * build.
+   *
+   * @throws InterruptedException
+   */
+  @Test
+  public void testWithdrawnChangesKeepRunningBuild()
+      throws InterruptedException {
+    final BuildState state = new BuildState();
+    assertThat(state.request(Arrays.asList("/app.js")), is(true));
+    final Build build = state.start();
+
+    state.announce();
+    state.withdraw();
+    assertThat(state.isCancelled(), is(false));
+    assertThat(state.isSuperseded(build), is(false));
+
+    state.finish(build, true);
+    assertThat(state.await(1), is(0L));
+    assertThat(state.start(), is(nullValue()));
+  }
+
+  /**
+   * @throws InterruptedException
+   */
+  @Test
+  public void testWithdrawnAnnouncementReleasesWaiters()
+      throws InterruptedException {
+    final BuildState state = new BuildState();
+    state.announce();
+    assertThat(state.await(1), is(1L));
+    state.withdraw();
+    assertThat(state.await(1), is(0L));
+  }
+
+  /**
+   *
+   */
+  @Test
+  public void testChangesCancelRunningBuild() {
+    final BuildState state = new BuildState();
+    state.request(Arrays.asList("/app.js"));
+    final Build build = state.start();
+
+    assertThat(state.request(Arrays.asList("/style.less")), is(false));
+    assertThat(state.isCancelled(), is(true));
+    assertThat(state.isSuperseded(build), is(true));
+    // Changes arriving while a build is pending are not withdrawn
+    state.withdraw();
+    assertThat(state.isSuperseded(build), is(true));
+
+    state.finish(build, false);
+    final Build next = state.start();
+    assertThat(next.getChangedResources(), is(Arrays.asList("/style.less")));
+    assertThat(state.isCancelled(), is(false));
+  }
+
+}
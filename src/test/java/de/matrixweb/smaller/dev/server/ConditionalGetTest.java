@@ -0,0 +1,99 @@
+package de.matrixweb.smaller.dev.server;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+import static org.hamcrest.CoreMatchers.*;
+
+/**
+ * @author markusw
+ */
+public class ConditionalGetTest {
+
+  private HttpServletRequest request;
+
+  private HttpServletResponse response;
+
+  /**
+   *
+   */
+  @Before
+  public void setUp() {
+    this.request = mock(HttpServletRequest.class);
+    this.response = mock(HttpServletResponse.class);
+    when(this.request.getMethod()).thenReturn("GET");
+    when(this.request.getDateHeader("If-Modified-Since")).thenReturn(-1L);
+  }
+
+  /**
+   * @throws Exception
+   */
+  @Test
+  public void testETagIsStableForSameContent() throws Exception {
+    assertThat(ConditionalGet.createETag("abc".getBytes("UTF-8")),
+        is(ConditionalGet.createETag("abc".getBytes("UTF-8"))));
+    assertThat(ConditionalGet.createETag("abc".getBytes("UTF-8")),
+        is(not(ConditionalGet.createETag("abd".getBytes("UTF-8")))));
+  }
+
+  /**
+   *
+   */
+  @Test
+  public void testMatchingETag() {
+    final String etag = ConditionalGet.createETag(1000L, 42L);
+    when(this.request.getHeader("If-None-Match")).thenReturn(
+        "\"other\", " + etag);
+
+    assertThat(ConditionalGet.isNotModified(this.request, this.response, etag,
+        1000L), is(true));
+    verify(this.response).setHeader("ETag", etag);
+    verify(this.response).setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+  }
+
+  /**
+   *
+   */
+  @Test
+  public void testChangedETagOverridesModificationDate() {
+    when(this.request.getHeader("If-None-Match")).thenReturn("\"other\"");
+    when(this.request.getDateHeader("If-Modified-Since")).thenReturn(5000L);
+
+    assertThat(ConditionalGet.isNotModified(this.request, this.response,
+        ConditionalGet.createETag(1000L, 42L), 1000L), is(false));
+    verify(this.response, never()).setStatus(anyInt());
+  }
+
+  /**
+   *
+   */
+  @Test
+  public void testIfModifiedSince() {
+    when(this.request.getDateHeader("If-Modified-Since")).thenReturn(5000L);
+
+    assertThat(ConditionalGet.isNotModified(this.request, this.response, null,
+        5999L), is(true));
+    assertThat(ConditionalGet.isNotModified(this.request, this.response, null,
+        6000L), is(false));
+  }
+
+  /**
+   *
+   */
+  @Test
+  public void testPostIsNeverNotModified() {
+    final String etag = ConditionalGet.createETag(1000L, 42L);
+    when(this.request.getMethod()).thenReturn("POST");
+    when(this.request.getHeader("If-None-Match")).thenReturn(etag);
+
+    assertThat(ConditionalGet.isNotModified(this.request, this.response, etag,
+        1000L), is(false));
+  }
+
+}
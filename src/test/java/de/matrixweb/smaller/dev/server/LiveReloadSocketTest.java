@@ -0,0 +1,134 @@
+package de.matrixweb.smaller.dev.server;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jetty.websocket.WebSocket.Connection;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+import static org.hamcrest.CoreMatchers.*;
+
+/**
+ * @author markusw
+ */
+public class LiveReloadSocketTest {
+
+  /**
+   * Applies a patch the same way as the live-reload client.
+   */
+  private static String apply(final String base,
+      final Map<String, Object> patch) {
+    final int prefix = (Integer) patch.get("prefix");
+    final int suffix = (Integer) patch.get("suffix");
+    return base.substring(0, prefix) + patch.get("text")
+        + base.substring(base.length() - suffix);
+  }
+
+  private static Map<String, Object> patch(final String previous,
+      final String content) {
+    final Map<String, Object> patch = LiveReloadSocket.createCssPatch(
+        "/style.css", "v2", content, "v1", previous);
+    assertThat(patch.get("base"), is((Object) "v1"));
+    assertThat(patch.get("version"), is((Object) "v2"));
+    assertThat(apply(previous, patch), is(content));
+    return patch;
+  }
+
+  /**
+   *
+   */
+  @Test
+  public void testFullContentWithoutBase() {
+    final Map<String, Object> patch = LiveReloadSocket.createCssPatch(
+        "/style.css", "v1", "a{color:red}", null, null);
+    assertThat(patch.get("content"), is((Object) "a{color:red}"));
+    assertThat(patch.containsKey("base"), is(false));
+    assertThat(patch.containsKey("text"), is(false));
+  }
+
+  /**
+   *
+   */
+  @Test
+  public void testChangeInTheMiddle() {
+    final Map<String, Object> patch = patch("a{color:red}b{margin:0}",
+        "a{color:blue}b{margin:0}");
+    assertThat(patch.get("prefix"), is((Object) 8));
+    assertThat(patch.get("suffix"), is((Object) 12));
+    assertThat(patch.get("text"), is((Object) "blue"));
+  }
+
+  /**
+   *
+   */
+  @Test
+  public void testAppendedAndRemovedContent() {
+    Map<String, Object> patch = patch("a{}", "a{}b{}");
+    assertThat(patch.get("prefix"), is((Object) 3));
+    assertThat(patch.get("suffix"), is((Object) 0));
+    assertThat(patch.get("text"), is((Object) "b{}"));
+
+    patch = patch("a{}b{}", "b{}");
+    assertThat(patch.get("prefix"), is((Object) 0));
+    assertThat(patch.get("suffix"), is((Object) 3));
+    assertThat(patch.get("text"), is((Object) ""));
+  }
+
+  /**
+   * Prefix and suffix must not overlap if the content repeats itself.
+   */
+  @Test
+  public void testRepeatedContent() {
+    Map<String, Object> patch = patch("aa", "aaa");
+    assertThat(patch.get("prefix"), is((Object) 2));
+    assertThat(patch.get("suffix"), is((Object) 0));
+    assertThat(patch.get("text"), is((Object) "a"));
+
+    patch = patch("a{}a{}", "a{}");
+    assertThat(patch.get("text"), is((Object) ""));
+
+    patch = patch("a{}", "a{}");
+    assertThat(patch.get("prefix"), is((Object) 3));
+    assertThat(patch.get("text"), is((Object) ""));
+  }
+
+  /**
+   * Messages have to be sent after the server was restarted in the same jvm.
+   *
+   * @throws InterruptedException
+   */
+  @Test
+  public void testSendAfterRestart() throws InterruptedException {
+    LiveReloadSocket.start();
+    LiveReloadSocket.stop();
+    LiveReloadSocket.start();
+    final CountDownLatch sent = new CountDownLatch(1);
+    final LiveReloadSocket socket = LiveReloadSocket.create();
+    socket.onOpen((Connection) Proxy.newProxyInstance(getClass()
+        .getClassLoader(), new Class<?>[] { Connection.class },
+        new InvocationHandler() {
+          @Override
+          public Object invoke(final Object proxy, final Method method,
+              final Object[] args) {
+            if ("sendMessage".equals(method.getName())) {
+              sent.countDown();
+            }
+            return null;
+          }
+        }));
+    try {
+      LiveReloadSocket.sendPing();
+      assertThat(sent.await(10, TimeUnit.SECONDS), is(true));
+    } finally {
+      socket.onClose(1000, "done");
+      LiveReloadSocket.stop();
+    }
+  }
+
+}
@@ -0,0 +1,62 @@
+package de.matrixweb.smaller.dev.server;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+import static org.hamcrest.CoreMatchers.*;
+
+/**
+ * @author markusw
+ */
+public class ProcessInputsTest {
+
+  /**
+   *
+   */
+  @Test
+  public void testJavascriptOutput() {
+    final ProcessInputs inputs = new ProcessInputs("/main.json", "/app.js");
+
+    assertThat(inputs.isAffectedBy(null), is(true));
+    assertThat(inputs.isAffectedBy(Arrays.asList("/main.json")), is(true));
+    assertThat(inputs.isAffectedBy(Arrays.asList("/lib/module.coffee")),
+        is(true));
+    assertThat(inputs.isAffectedBy(Arrays.asList("/css/style.less",
+        "/index.html", "/index.html.cfg.json")), is(false));
+    assertThat(inputs.isAffectedBy(Arrays.asList("/lib/unknown.xyz")),
+        is(true));
+    // Could be inlined by the bundle
+    assertThat(inputs.isAffectedBy(Arrays.asList("/css/inline.css")),
+        is(true));
+    assertThat(inputs.isAffectedBy(Arrays.asList("/img/icon.svg")), is(true));
+  }
+
+  /**
+   *
+   */
+  @Test
+  public void testStylesheetOutput() {
+    final ProcessInputs inputs = new ProcessInputs("/main.json", "/app.css");
+
+    assertThat(inputs.isAffectedBy(Arrays.asList("/css/style.less")),
+        is(true));
+    assertThat(inputs.isAffectedBy(Arrays.asList("/css/variables.json")),
+        is(true));
+    assertThat(inputs.isAffectedBy(Arrays.asList("/js/app.js",
+        "/js/module.coffee", "/templates/view.hbs")), is(false));
+  }
+
+  /**
+   *
+   */
+  @Test
+  public void testUnknownOutputIsAlwaysAffected() {
+    final ProcessInputs inputs = new ProcessInputs("/main.json", "/app.bin");
+
+    assertThat(inputs.isAffectedBy(Arrays.asList("/index.html")), is(true));
+  }
+
+}
@@ -0,0 +1,85 @@
+package de.matrixweb.smaller.dev.server;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+import static org.hamcrest.CoreMatchers.*;
+
+/**
+ * @author markusw
+ */
+public class ResourceMatcherTest {
+
+  /**
+   *
+   */
+  @Test
+  public void testEmptyIncludesMatchEverything() {
+    final ResourceMatcher matcher = new ResourceMatcher(
+        Collections.<String> emptyList(), Collections.<String> emptyList());
+    assertThat(matcher.matches("/some/file.txt"), is(true));
+  }
+
+  /**
+   *
+   */
+  @Test
+  public void testAntPatterns() {
+    final ResourceMatcher matcher = new ResourceMatcher(Arrays.asList(
+        "**/*.coffee", "/*.less", "sub/?.js"), Arrays.asList("**/vendor/**"));
+    assertThat(matcher.matches("/main.coffee"), is(true));
+    assertThat(matcher.matches("/a/b/main.coffee"), is(true));
+    assertThat(matcher.matches("/main.less"), is(true));
+    assertThat(matcher.matches("/a/main.less"), is(false));
+    assertThat(matcher.matches("/sub/a.js"), is(true));
+    assertThat(matcher.matches("/sub/ab.js"), is(false));
+    assertThat(matcher.matches("/a/vendor/lib.coffee"), is(false));
+    assertThat(matcher.matches("/vendor/lib.coffee"), is(false));
+  }
+
+  /**
+   *
+   */
+  @Test
+  public void testFolders() {
+    final ResourceMatcher matcher = new ResourceMatcher(Arrays.asList(
+        "js/**/*.js", "**/*.less"), Arrays.asList("**/node_modules/**",
+        "build/"));
+    assertThat(matcher.matchesFolder(""), is(true));
+    assertThat(matcher.matchesFolder("/js/lib"), is(true));
+    assertThat(matcher.matchesFolder("/css"), is(true));
+    assertThat(matcher.matchesFolder("/js/node_modules"), is(false));
+    assertThat(matcher.matchesFolder("/build"), is(false));
+
+    final ResourceMatcher scripts = new ResourceMatcher(
+        Arrays.asList("js/**/*.js"), Collections.<String> emptyList());
+    assertThat(scripts.matchesFolder("/js"), is(true));
+    assertThat(scripts.matchesFolder("/css"), is(false));
+  }
+
+  /**
+   *
+   */
+  @Test
+  public void testIndexUpdates() {
+    final ResourceIndex index = new ResourceIndex(new ResourceMatcher(
+        Arrays.asList("**/*.js"), Collections.<String> emptyList()),
+        Arrays.asList("/a.js", "/b.js"));
+    final ChangeSet changes = new ChangeSet();
+    changes.deleted("/a.js");
+    changes.created("/c.js");
+    changes.created("/c.txt");
+    changes.modified("/b.js");
+
+    assertThat(index.update(changes),
+        is(Arrays.asList("/a.js", "/c.js", "/b.js")));
+    assertThat(index.contains("/a.js"), is(false));
+    assertThat(index.contains("/c.js"), is(true));
+    assertThat(index.contains("/c.txt"), is(false));
+  }
+
+}
@@ -0,0 +1,64 @@
+package de.matrixweb.smaller.dev.server;
+
+import java.io.File;
+import java.util.Collections;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import de.matrixweb.smaller.config.ConfigFile;
+import de.matrixweb.smaller.config.Environment;
+
+import static org.junit.Assert.*;
+
+import static org.hamcrest.CoreMatchers.*;
+
+/**
+ * @author markusw
+ */
+public class RouterTest {
+
+  private ConfigFile configFile;
+
+  private Router router;
+
+  /**
+   * @throws Exception
+   */
+  @Before
+  public void createRouter() throws Exception {
+    this.configFile = ConfigFile.read(new File(
+        "src/test/resources/router.yml"));
+    this.router = new Router(this.configFile,
+        Collections.<Environment, SmallerResourceHandler> emptyMap());
+  }
+
+  private Environment env(final String name) {
+    return this.configFile.getEnvironments().get(name);
+  }
+
+  /**
+   * Overlapping routes are resolved in the order of their declaration.
+   */
+  @Test
+  public void testOverlappingRoutes() {
+    for (int i = 0; i < 3; i++) {
+      assertThat(this.router.findEnvironmentByUri("/js/app.js"),
+          is(env("app")));
+      assertThat(this.router.findEnvironmentByUri("/js/vendor/jquery.js"),
+          is(env("bundles")));
+      assertThat(this.router.findEnvironmentByUri("/js/vendor/jquery.css"),
+          is(env("vendor")));
+    }
+  }
+
+  /**
+   *
+   */
+  @Test
+  public void testUnknownUri() {
+    assertThat(this.router.findEnvironmentByUri("/css/style.css"),
+        is(nullValue()));
+  }
+
+}
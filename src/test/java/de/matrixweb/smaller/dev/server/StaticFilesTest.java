@@ -0,0 +1,159 @@
+package de.matrixweb.smaller.dev.server;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.net.URLConnection;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.nio.SelectChannelConnector;
+import org.eclipse.jetty.servlet.ServletContextHandler;
+import org.eclipse.jetty.servlet.ServletHolder;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.*;
+
+import static org.hamcrest.CoreMatchers.*;
+
+/**
+ * @author markusw
+ */
+public class StaticFilesTest {
+
+  private static final File FOLDER = new File("src/test/resources/static");
+
+  private static final String URI = "/heise_online_logo_top.gif";
+
+  /** */
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private StaticFiles staticFiles;
+
+  private Server server;
+
+  private int port;
+
+  /**
+   * @throws Exception
+   */
+  @Before
+  public void startServer() throws Exception {
+    this.staticFiles = new StaticFiles(Arrays.asList(FOLDER,
+        this.folder.getRoot()));
+    this.server = new Server();
+    final SelectChannelConnector connector = new SelectChannelConnector();
+    connector.setPort(0);
+    this.server.addConnector(connector);
+    final ServletContextHandler handler = new ServletContextHandler();
+    handler.addServlet(new ServletHolder(new HttpServlet() {
+      private static final long serialVersionUID = 1L;
+
+      @Override
+      protected void doGet(final HttpServletRequest request,
+          final HttpServletResponse response) throws IOException {
+        StaticFilesTest.this.staticFiles.send(
+            StaticFilesTest.this.staticFiles.find(request.getRequestURI()),
+            "image/gif", response);
+      }
+    }), "/");
+    this.server.setHandler(handler);
+    this.server.start();
+    this.port = connector.getLocalPort();
+  }
+
+  /**
+   * @throws Exception
+   */
+  @After
+  public void stopServer() throws Exception {
+    this.server.stop();
+    this.staticFiles.dispose();
+  }
+
+  private byte[] fetch() throws IOException {
+    return fetch(URI);
+  }
+
+  private byte[] fetch(final String uri) throws IOException {
+    final URLConnection connection = new URL("http://localhost:" + this.port
+        + uri).openConnection();
+    try (InputStream in = connection.getInputStream()) {
+      final byte[] content = IOUtils.toByteArray(in);
+      assertThat(connection.getContentLength(), is(content.length));
+      return content;
+    }
+  }
+
+  /**
+   * @throws Exception
+   */
+  @Test
+  public void testRepeatedRequests() throws Exception {
+    final byte[] expected = FileUtils.readFileToByteArray(new File(FOLDER,
+        URI));
+    assertThat(fetch(), is(expected));
+    assertThat(fetch(), is(expected));
+  }
+
+  /**
+   * @throws Exception
+   */
+  @Test
+  public void testConcurrentRequests() throws Exception {
+    final byte[] expected = FileUtils.readFileToByteArray(new File(FOLDER,
+        URI));
+    final ExecutorService executor = Executors.newFixedThreadPool(8);
+    try {
+      final List<Future<byte[]>> results = new ArrayList<>();
+      for (int i = 0; i < 32; i++) {
+        results.add(executor.submit(new Callable<byte[]>() {
+          @Override
+          public byte[] call() throws IOException {
+            return fetch();
+          }
+        }));
+      }
+      for (final Future<byte[]> result : results) {
+        assertThat(result.get(), is(expected));
+      }
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  /**
+   * Files which are too large to be kept mapped are sent the same way.
+   *
+   * @throws Exception
+   */
+  @Test
+  public void testLargeFile() throws Exception {
+    final byte[] expected = new byte[5 * 1024 * 1024 + 17];
+    new Random(42).nextBytes(expected);
+    FileUtils.writeByteArrayToFile(this.folder.newFile("large.bin"),
+        expected);
+    assertThat(fetch("/large.bin"), is(expected));
+    assertThat(fetch("/large.bin"), is(expected));
+  }
+
+}
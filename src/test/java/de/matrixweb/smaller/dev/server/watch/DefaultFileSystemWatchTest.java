@@ -0,0 +1,79 @@
+package de.matrixweb.smaller.dev.server.watch;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import de.matrixweb.smaller.dev.server.watch.FileSystemWatch.DirectoryFilter;
+import de.matrixweb.smaller.dev.server.watch.SnapshotIndex.Diff;
+
+import static org.junit.Assert.*;
+
+import static org.hamcrest.CoreMatchers.*;
+
+/**
+ * @author marwol
+ */
+public class DefaultFileSystemWatchTest {
+
+  /** */
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  /**
+   * Files deleted between listing a directory and reading their attributes
+   * must not hide the remaining files of the directory.
+   *
+   * @throws IOException
+   */
+  @Test
+  public void testFilesDeletedWhileRegistering() throws IOException {
+    final Path dir = this.folder.getRoot().toPath();
+    for (int i = 0; i < 50; i++) {
+      Files.write(dir.resolve("keep" + i + ".js"), new byte[] { 1 });
+      Files.write(dir.resolve("temp" + i + ".js"), new byte[] { 1 });
+    }
+    Files.createDirectory(dir.resolve("sub"));
+
+    final WatchRegistry watches = new WatchRegistry();
+    final SnapshotIndex snapshot = new SnapshotIndex();
+    final FileSystemWatch watch = new DefaultFileSystemWatch(watches,
+        new DirectoryFilter() {
+          @Override
+          public boolean accept(final Path path) {
+            if (path.endsWith("sub")) {
+              try {
+                for (int i = 0; i < 50; i++) {
+                  Files.deleteIfExists(dir.resolve("temp" + i + ".js"));
+                }
+              } catch (final IOException e) {
+                throw new IllegalStateException(e);
+              }
+            }
+            return true;
+          }
+        }, snapshot);
+    try {
+      watch.register(dir);
+      assertThat(watches.isWatched(dir.resolve("sub")), is(true));
+    } finally {
+      watch.close();
+    }
+
+    // Every remaining file has to be known to the snapshot
+    final Diff diff = snapshot.rescan(Collections.singleton(dir),
+        new DirectoryFilter() {
+          @Override
+          public boolean accept(final Path path) {
+            return true;
+          }
+        });
+    assertThat(diff.getCreated().isEmpty(), is(true));
+  }
+
+}
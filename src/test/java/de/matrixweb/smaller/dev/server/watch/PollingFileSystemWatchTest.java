@@ -0,0 +1,205 @@
+package de.matrixweb.smaller.dev.server.watch;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import de.matrixweb.smaller.dev.server.watch.FileSystemWatch.DirectoryFilter;
+import de.matrixweb.smaller.dev.server.watch.FileSystemWatch.FileSystemWatchKey;
+import de.matrixweb.smaller.dev.server.watch.FileSystemWatch.FileSytemWatchEvent;
+import de.matrixweb.smaller.dev.server.watch.PollingFileSystemWatch.PollingWatchKey;
+
+import static org.junit.Assert.*;
+
+import static org.hamcrest.CoreMatchers.*;
+
+/**
+ * @author marwol
+ */
+public class PollingFileSystemWatchTest {
+
+  /** */
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private Path dir;
+
+  private final BlockingQueue<PollingWatchKey> signalled = new LinkedBlockingQueue<>();
+
+  private PollingWatchKey key;
+
+  /**
+   * @throws IOException
+   */
+  @Before
+  public void createKey() throws IOException {
+    this.dir = this.folder.getRoot().toPath();
+    write("style.css", "a{}");
+    Files.createDirectory(this.dir.resolve("js"));
+    this.key = new PollingWatchKey(this.dir, this.signalled);
+    assertThat(this.key.scan(false), is(false));
+  }
+
+  private Path write(final String path, final String content)
+      throws IOException {
+    return Files.write(this.dir.resolve(path),
+        content.getBytes(Charset.forName("UTF-8")));
+  }
+
+  private static List<String> describe(
+      final Collection<FileSytemWatchEvent<?>> events) {
+    final List<String> list = new ArrayList<>();
+    for (final FileSytemWatchEvent<?> event : events) {
+      list.add(event.toString());
+    }
+    return list;
+  }
+
+  /**
+   * @throws IOException
+   */
+  @Test
+  public void testInitialScanReportsNothing() throws IOException {
+    assertThat(this.signalled.isEmpty(), is(true));
+    assertThat(this.key.pollEvents().isEmpty(), is(true));
+    assertThat(this.key.getDirectories(), hasItem("js"));
+    assertThat(this.key.scan(true), is(false));
+  }
+
+  /**
+   * @throws IOException
+   */
+  @Test
+  public void testCreateModifyDelete() throws IOException {
+    write("index.html", "<html/>");
+    write("style.css", "a{color:red}");
+    Files.delete(this.dir.resolve("js"));
+
+    assertThat(this.key.scan(true), is(true));
+    assertThat(this.signalled.poll(), is(this.key));
+    assertThat(describe(this.key.pollEvents()), is(Arrays.asList(
+        "CREATE index.html", "DELETE js", "MODIFY style.css")));
+    assertThat(this.key.reset(), is(true));
+    assertThat(this.signalled.isEmpty(), is(true));
+  }
+
+  /**
+   * Modified directories are reported by their own keys.
+   *
+   * @throws IOException
+   */
+  @Test
+  public void testChangedSubdirectoryIsNoModification() throws IOException {
+    write("js/app.js", "var a;");
+    assertThat(this.key.scan(true), is(false));
+  }
+
+  /**
+   * @throws IOException
+   */
+  @Test
+  public void testSignalledOnceUntilReset() throws IOException {
+    write("a.css", "a{}");
+    this.key.scan(true);
+    write("b.css", "b{}");
+    this.key.scan(true);
+    assertThat(this.signalled.size(), is(1));
+    assertThat(this.key.pollEvents().size(), is(2));
+  }
+
+  /**
+   * Events arriving between polling and resetting the key must signal the
+   * key again.
+   *
+   * @throws IOException
+   */
+  @Test
+  public void testResetSignalsPendingEvents() throws IOException {
+    write("a.css", "a{}");
+    this.key.scan(true);
+    assertThat(this.signalled.poll(), is(this.key));
+    this.key.pollEvents();
+
+    write("b.css", "b{}");
+    this.key.scan(true);
+    assertThat(this.signalled.isEmpty(), is(true));
+
+    assertThat(this.key.reset(), is(true));
+    assertThat(this.signalled.poll(), is(this.key));
+    assertThat(describe(this.key.pollEvents()),
+        is(Arrays.asList("CREATE b.css")));
+  }
+
+  /**
+   * @throws IOException
+   */
+  @Test
+  public void testVanishedDirectory() throws IOException {
+    final Path js = this.dir.resolve("js");
+    final PollingWatchKey child = new PollingWatchKey(js, this.signalled);
+    Files.write(js.resolve("app.js"), new byte[] { 1 });
+    child.scan(false);
+
+    Files.delete(js.resolve("app.js"));
+    Files.delete(js);
+    try {
+      child.scan(true);
+      fail("Expected the scan to fail");
+    } catch (final IOException e) {
+      child.cancel();
+    }
+    assertThat(this.signalled.poll(), is(child));
+    assertThat(describe(child.pollEvents()),
+        is(Arrays.asList("DELETE app.js")));
+    assertThat(child.reset(), is(false));
+  }
+
+  /**
+   * @throws Exception
+   */
+  @Test
+  public void testPollingWatch() throws Exception {
+    final WatchRegistry watches = new WatchRegistry();
+    final FileSystemWatch watch = new PollingFileSystemWatch(watches,
+        new DirectoryFilter() {
+          @Override
+          public boolean accept(final Path path) {
+            return true;
+          }
+        });
+    try {
+      watch.register(this.dir);
+      assertThat(watches.isWatched(this.dir.resolve("js")), is(true));
+
+      write("js/app.js", "var a;");
+      final FileSystemWatchKey signalledKey = watch.poll(10,
+          TimeUnit.SECONDS);
+      assertThat(signalledKey, is(notNullValue()));
+      assertThat(watches.get(signalledKey), is(this.dir.resolve("js")));
+      final Collection<FileSytemWatchEvent<?>> events = signalledKey
+          .pollEvents();
+      assertThat(events.size(), is(1));
+      final FileSytemWatchEvent<?> event = events.iterator().next();
+      assertThat(event.kind().isEntryCreate(), is(true));
+      assertThat(event.context(), is((Object) Paths.get("app.js")));
+      assertThat(signalledKey.reset(), is(true));
+    } finally {
+      watch.close();
+    }
+  }
+
+}
@@ -0,0 +1,201 @@
+package de.matrixweb.smaller.dev.server.watch;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import de.matrixweb.smaller.dev.server.watch.FileSystemWatch.DirectoryFilter;
+import de.matrixweb.smaller.dev.server.watch.SnapshotIndex.Diff;
+
+import static org.junit.Assert.*;
+
+import static org.hamcrest.CoreMatchers.*;
+
+/**
+ * @author marwol
+ */
+public class SnapshotIndexTest {
+
+  private static final DirectoryFilter ALL = new DirectoryFilter() {
+    @Override
+    public boolean accept(final Path dir) {
+      return true;
+    }
+  };
+
+  /** */
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private Path root;
+
+  private SnapshotIndex index;
+
+  /**
+   * @throws IOException
+   */
+  @Before
+  public void createTree() throws IOException {
+    this.root = this.folder.getRoot().toPath();
+    write("index.html", "<html/>");
+    write("css/style.css", "a{}");
+    write("js/lib/jquery.js", "var $;");
+    write("js/lib/deep/module.js", "var m;");
+    this.index = new SnapshotIndex();
+  }
+
+  private Path write(final String path, final String content)
+      throws IOException {
+    final Path file = this.root.resolve(path);
+    Files.createDirectories(file.getParent());
+    return Files.write(file, content.getBytes(Charset.forName("UTF-8")));
+  }
+
+  /**
+   *
+   */
+  @Test
+  public void testInitialScan() {
+    final Diff diff = this.index.rescan(Collections.singleton(this.root), ALL);
+    assertThat(diff.getCreated().size(), is(4));
+    assertThat(diff.getCreated(),
+        hasItem(this.root.resolve("js/lib/deep/module.js")));
+    assertThat(diff.getModified().isEmpty(), is(true));
+    assertThat(diff.getDeleted().isEmpty(), is(true));
+    assertThat(this.index.size(), is(4));
+  }
+
+  /**
+   * @throws IOException
+   */
+  @Test
+  public void testNestedChanges() throws IOException {
+    this.index.rescan(Collections.singleton(this.root), ALL);
+
+    final Path modified = write("js/lib/deep/module.js", "var module;");
+    final Path deleted = this.root.resolve("js/lib/jquery.js");
+    Files.delete(deleted);
+    final Path created = write("js/lib/deep/er/new.js", "var n;");
+
+    final Diff diff = this.index.rescan(Collections.singleton(this.root), ALL);
+    assertThat(diff.getCreated(), is(Arrays.asList(created)));
+    assertThat(diff.getModified(), is(Arrays.asList(modified)));
+    assertThat(diff.getDeleted(), is(Arrays.asList(deleted)));
+    assertThat(this.index.size(), is(4));
+
+    final Diff unchanged = this.index.rescan(
+        Collections.singleton(this.root), ALL);
+    assertThat(unchanged.getCreated().isEmpty(), is(true));
+    assertThat(unchanged.getModified().isEmpty(), is(true));
+    assertThat(unchanged.getDeleted().isEmpty(), is(true));
+  }
+
+  /**
+   * @throws IOException
+   */
+  @Test
+  public void testDeletedDirectory() throws IOException {
+    this.index.rescan(Collections.singleton(this.root), ALL);
+
+    final Path lib = this.root.resolve("js/lib");
+    Files.delete(lib.resolve("deep/module.js"));
+    Files.delete(lib.resolve("deep"));
+    Files.delete(lib.resolve("jquery.js"));
+    Files.delete(lib);
+
+    final Diff diff = this.index.rescan(Collections.singleton(this.root), ALL);
+    assertThat(diff.getDeleted().size(), is(2));
+    assertThat(diff.getDeleted(), hasItems(lib.resolve("jquery.js"),
+        lib.resolve("deep/module.js")));
+    assertThat(this.index.size(), is(2));
+  }
+
+  /**
+   * Only files below the scanned directories could be reported as deleted.
+   *
+   * @throws IOException
+   */
+  @Test
+  public void testPartialRescan() throws IOException {
+    this.index.rescan(Collections.singleton(this.root), ALL);
+
+    Files.delete(this.root.resolve("css/style.css"));
+    final Path created = write("js/lib/deep/new.js", "var n;");
+
+    final Path js = this.root.resolve("js");
+    final Diff diff = this.index.rescan(
+        Arrays.asList(js.resolve("lib/deep"), js), ALL);
+    assertThat(diff.getCreated(), is(Arrays.asList(created)));
+    assertThat(diff.getDeleted().isEmpty(), is(true));
+    assertThat(this.index.size(), is(5));
+  }
+
+  /**
+   * Files deleted between listing a directory and reading their attributes
+   * must not hide the remaining files of the directory.
+   *
+   * @throws IOException
+   */
+  @Test
+  public void testFilesDeletedWhileScanning() throws IOException {
+    final Path dir = this.root.resolve("mixed");
+    for (int i = 0; i < 50; i++) {
+      write("mixed/keep" + i + ".js", "var k;");
+    }
+    for (int i = 0; i < 50; i++) {
+      write("mixed/temp" + i + ".js", "var t;");
+    }
+    Files.createDirectory(dir.resolve("sub"));
+    this.index.rescan(Collections.singleton(dir), ALL);
+    assertThat(this.index.size(), is(100));
+
+    // The listing is read ahead, so the deleted files are still listed
+    final Diff diff = this.index.rescan(Collections.singleton(dir),
+        new DirectoryFilter() {
+          @Override
+          public boolean accept(final Path sub) {
+            try {
+              for (int i = 0; i < 50; i++) {
+                Files.delete(dir.resolve("temp" + i + ".js"));
+              }
+            } catch (final IOException e) {
+              throw new IllegalStateException(e);
+            }
+            return true;
+          }
+        });
+    // Temp files listed before the deletion are still part of the index
+    for (int i = 0; i < 50; i++) {
+      assertThat(diff.getDeleted(), not(hasItem(dir.resolve("keep" + i
+          + ".js"))));
+    }
+    assertThat(diff.getCreated().isEmpty(), is(true));
+    assertThat(this.index.size(), is(100 - diff.getDeleted().size()));
+  }
+
+  /**
+   *
+   */
+  @Test
+  public void testFilteredDirectories() {
+    final Diff diff = this.index.rescan(Collections.singleton(this.root),
+        new DirectoryFilter() {
+          @Override
+          public boolean accept(final Path dir) {
+            return !dir.endsWith("lib");
+          }
+        });
+    assertThat(diff.getCreated().size(), is(2));
+    assertThat(diff.getCreated(),
+        not(hasItem(this.root.resolve("js/lib/jquery.js"))));
+  }
+
+}